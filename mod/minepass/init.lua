@@ -7,18 +7,59 @@ local operator = minetest.setting_get("name")
 local stepcount = 0
 
 minepass = {
-	version = "0.2.2",
+	version = "0.3.0",
 	modpath = modpath,
 	players = {},
 	command_sender = "SERVER",
-	command_filename = "/command.txt",
+	command_filename = "/command.journal",
+	command_ack_filename = "/command.ack",
+	command_interval = 0.2,
+	command_timer = 0,
+	command_offset = 0,
+	command_read_max = 65536,
+	command_generation = nil,
+	command_skipping = false,
+	command_seq = 0,
+	command_budget = tonumber(minetest.setting_get("minepass_command_budget_us")) or 2000,
+	command_queue = { first = 1, last = 0, seqs = {}, lines = {} },
 	shadow_auth_filename = "/auth.shadow.txt",
+	step_interval = 10,
+	step_timer = 0,
+	step_count = 0,
+	step_max = 0,
 	wrapper_connected = false,
+	auth_ready = false,
+	connect_timer = 0,
+	connect_check_timer = 0,
+	connect_warn = 8,
+	connect_timeout = 20,
+	starting_filename = "/minepass.starting",
 	wrapper_vars = {
 		join_url = "http://minepass.net"
 	}
 }
 
+-- Structured records for the wrapper, which decodes these without parsing
+-- the human readable log. Fields are separated by "|".
+function minepass:record(...)
+	minetest.log("action", "MP|" .. table.concat({...}, "|"))
+end
+
+-- Parse a line in auth.txt format ("name:password:privileges", the
+-- privileges being optional).
+function minepass:parse_auth(line)
+	local name, password, privs = string.match(line, "^([^:]+):([^:]*):?([^:]*)")
+	if not name then return end
+
+	return name, {
+		password = password,
+		privileges = minetest.string_to_privs(privs),
+		last_login = os.time()
+	}
+end
+
+-- Load all players from the shadow auth file (a full snapshot). Between
+-- snapshots the wrapper sends only the changes, see run_command.
 function minepass:load_players()
 	local players = {}
 
@@ -29,9 +70,9 @@ function minepass:load_players()
 	end
 
 	for line in file:lines() do
-		local name = string.match(line, "^([^:]+):.*")
+		local name, auth = self:parse_auth(line)
 		if name then
-			players[name] = true
+			players[name] = auth
 		end
 	end
 	file:close()
@@ -39,24 +80,131 @@ function minepass:load_players()
 	self.players = players
 end
 
-function minepass:run_commands()
-	local file, err = io.open(worldpath .. self.command_filename, "r")
+function minepass:load_command_seq()
+	local file = io.open(worldpath .. self.command_ack_filename, "r")
+	if not file then return end
+
+	local seq = tonumber(string.match(file:read("*line") or "", "^(%d+)"))
+	file:close()
+	if seq then
+		self.command_seq = seq
+	end
+end
+
+function minepass:save_command_seq(used, backlog)
+	local path = worldpath .. self.command_ack_filename
+	local file, err = io.open(path .. ".tmp", "w")
+	if err then
+		minetest.log("error", "Failed to save command ack: " .. err)
+		return
+	end
+
+	file:write(self.command_seq .. " " .. used .. " " .. backlog .. "\n"); file:close()
+	if not os.rename(path .. ".tmp", path) then
+		os.remove(path)
+		os.rename(path .. ".tmp", path)
+	end
+end
+
+function minepass:read_commands()
+	local file, err = io.open(worldpath .. self.command_filename, "rb")
 	if err then return end
 
-	local line = file:read("*line"); file:close()
-	os.remove(worldpath .. self.command_filename)
-	if not line then return end
+	-- The offset is only valid within one generation of the journal. When the
+	-- wrapper rewrites it, rescan it (sequence numbers prevent repeats).
+	local header = file:read("*l")
+	local generation = header and string.match(header, "^MPJ (%d+)$")
+	if not generation then
+		file:close()
+		return
+	end
+	if generation ~= self.command_generation then
+		self.command_generation = generation
+		self.command_offset = #header + 1
+		self.command_skipping = false
+	end
+
+	local size = file:seek("end")
+	if size <= self.command_offset then
+		file:close()
+		return
+	end
+
+	-- Read in bounded chunks, so a long journal is spread over several polls.
+	file:seek("set", self.command_offset)
+	local data = file:read(math.min(size - self.command_offset, self.command_read_max)); file:close()
+	if not data then return end
 
-	local type, cmd, args = string.match(line, "^([/#])([^ ]+) *(.*)$")
+	-- Drop the rest of an oversize record.
+	if self.command_skipping then
+		local pos = string.find(data, "\n", 1, true)
+		self.command_offset = self.command_offset + (pos or #data)
+		if not pos then return end
+		self.command_skipping = false
+		data = string.sub(data, pos + 1)
+	end
+
+	-- Only complete records are consumed, a partial one is read again next time.
+	local queue = self.command_queue
+	local queued_seq = queue.seqs[queue.last] or self.command_seq
+	local consumed = 0
+	for line, pos in string.gmatch(data, "([^\n]*)\n()") do
+		consumed = pos - 1
+		local seq, command = string.match(line, "^(%d+) (.*)$")
+		seq = tonumber(seq)
+		if seq and seq > queued_seq then
+			queue.last = queue.last + 1
+			queue.seqs[queue.last] = seq
+			queue.lines[queue.last] = command
+			queued_seq = seq
+		end
+	end
+
+	-- A record that doesn't fit in a whole chunk can never be read complete,
+	-- so it is skipped rather than stalling every later command.
+	if consumed == 0 and #data == self.command_read_max then
+		minetest.log("error", "Skipping MinePass command longer than " .. self.command_read_max .. " bytes")
+		consumed = #data
+		self.command_skipping = true
+	end
+
+	self.command_offset = self.command_offset + consumed
+end
+
+-- Execute queued commands until the per-step budget is spent, leaving the
+-- remainder for later steps so that large batches don't stall the server.
+-- The ack is saved before each command runs, so a command (such as a kick
+-- or message) never runs twice, even if the server restarts.
+function minepass:run_commands()
+	local queue = self.command_queue
+	if queue.first > queue.last then return end
+
+	local start = minetest.get_us_time()
+	local used = 0
+	repeat
+		local i = queue.first
+		local seq, command = queue.seqs[i], queue.lines[i]
+		queue.seqs[i] = nil
+		queue.lines[i] = nil
+		queue.first = i + 1
+
+		self.command_seq = seq
+		self:save_command_seq(used, queue.last - i)
+		self:run_command(command)
+		used = minetest.get_us_time() - start
+	until queue.first > queue.last or used >= self.command_budget
+
+	self:save_command_seq(used, queue.last - queue.first + 1)
+end
+
+function minepass:run_command(line)
+	local type, cmd, args = string.match(line, "^([/#@])([^ ]+) *(.*)$")
   if not cmd then return end
 	if not args then args = "" end
 
   if type == "/" then
 		if minetest.chatcommands[cmd] then
 			minetest.chatcommands[cmd].func(self.command_sender, args)
-			if cmd == "auth_reload" then
-				self:load_players()
-			end
 			minetest.log("action", "/" .. cmd .. " " .. args)
 		else
 			minetest.log("error", "Unknown command: " .. cmd)
@@ -74,6 +222,54 @@ function minepass:run_commands()
 			minetest.log("error", "Please update 'name' setting in minetest.config")
 			minetest.request_shutdown()
 		end
+	elseif type == "@" then
+		-- Auth changes, applied in memory.
+		local name
+		if cmd == "auth_set" then
+			local auth
+			name, auth = self:parse_auth(args)
+			if not name then return end
+			local previous = self.players[name]
+			if previous then
+				auth.last_login = previous.last_login
+			end
+			self.players[name] = auth
+		elseif cmd == "auth_del" then
+			name = args
+			self.players[name] = nil
+		else
+			minetest.log("error", "Unknown command: " .. cmd)
+			return
+		end
+		minetest.notify_authentication_modified(name)
+		minetest.log("info", "MP " .. cmd .. " " .. name)
+	end
+end
+
+
+-- Shut down if the wrapper does not connect in time. The wrapper keeps a
+-- starting file in the world while MinePass initializes (the first sync
+-- may take a while), during which the timeout does not run.
+function minepass:await_connection(dtime)
+	self.connect_check_timer = self.connect_check_timer + dtime
+	if self.connect_check_timer >= 1 then
+		self.connect_check_timer = 0
+		local file = io.open(worldpath .. self.starting_filename, "r")
+		if file then
+			file:close()
+			self.connect_timer = 0
+			return
+		end
+	end
+
+	local previous = self.connect_timer
+	self.connect_timer = self.connect_timer + dtime
+	if previous < self.connect_warn and self.connect_timer >= self.connect_warn then
+		minetest.log("error", "MP wrapper still not connected")
+	end
+	if previous < self.connect_timeout and self.connect_timer >= self.connect_timeout then
+		minetest.log("error", "MinePass failed. Shutting down...")
+		minetest.request_shutdown()
 	end
 end
 
@@ -83,30 +279,42 @@ end
 
 function minepass:step(dtime)
 	if stepcount == 5 then
-		self:load_players()
-		minetest.log("action", "MinePass plugin v" .. self.version)
-		minetest.log("action", minetest.get_server_status())
-		local modnames = minetest.get_modnames()
-		for i, name in ipairs(modnames) do
-			minetest.log("action", "[Mod] " .. name)
-		end
-		minetest.log("action", "End Mod List")
-		minetest.log("action", "MinePass plugin loaded.")
-		minetest.log("action", "awaiting connection from MP wrapper...")
+		self:load_command_seq()
+		local status = (string.gsub(minetest.get_server_status(), "\n", " "))
+		self:record("hello", self.version, "auth")
+		self:record("status", string.match(status, "version=([^,]+),") or "", status)
+		self:record("mods", table.concat(minetest.get_modnames(), ","))
+		self:record("loaded")
+		minetest.log("action", "MinePass plugin v" .. self.version .. " loaded, awaiting connection from MP wrapper...")
+	end
+
+	-- Report step timing to the wrapper.
+	self.step_timer = self.step_timer + dtime
+	self.step_count = self.step_count + 1
+	if dtime > self.step_max then
+		self.step_max = dtime
+	end
+	if self.step_timer >= self.step_interval then
+		self:record("step",
+			math.floor(self.step_timer / self.step_count * 1000000),
+			math.floor(self.step_max * 1000000),
+			self.step_count)
+		self.step_timer = 0
+		self.step_count = 0
+		self.step_max = 0
 	end
 
 	if stepcount > 5 then
+		self.command_timer = self.command_timer + dtime
+		if self.command_timer >= self.command_interval then
+			self.command_timer = 0
+			self:read_commands()
+		end
 		self:run_commands()
 	end
 
-	if not self.wrapper_connected then
-		if stepcount == 80 then
-			minetest.log("error", "MP wrapper still not connected")
-		end
-		if stepcount == 200 then
-			minetest.log("error", "MinePass failed. Shutting down...")
-			minetest.request_shutdown()
-		end
+	if stepcount > 5 and not self.wrapper_connected then
+		self:await_connection(dtime)
 	end
 
 	stepcount = stepcount + 1
@@ -117,13 +325,95 @@ minetest.register_globalstep(function(dtime)
 end)
 
 
+--
+-- Auth Handler
+--
+-- Auth is held in memory (see load_players), so the server never reads auth.txt.
+-- Changes made in game are not persisted, since MinePass manages the players.
+
+minepass:load_players()
+
+minetest.register_authentication_handler({
+	get_auth = function(name)
+		local auth = minepass.players[name]
+		if not auth then return nil end
+
+		local privileges = auth.privileges
+		if minetest.is_singleplayer() or name == operator then
+			privileges = {}
+			for priv, def in pairs(minetest.registered_privileges) do
+				privileges[priv] = true
+			end
+		end
+
+		return {
+			password = auth.password,
+			privileges = privileges,
+			last_login = auth.last_login
+		}
+	end,
+	create_auth = function(name, password)
+		minepass.players[name] = {
+			password = password,
+			privileges = minetest.string_to_privs(minetest.setting_get("default_privs") or "interact, shout"),
+			last_login = os.time()
+		}
+	end,
+	set_password = function(name, password)
+		local auth = minepass.players[name]
+		if not auth then
+			minetest.get_auth_handler().create_auth(name, password)
+		else
+			auth.password = password
+		end
+		return true
+	end,
+	set_privileges = function(name, privileges)
+		local auth = minepass.players[name]
+		if auth then
+			auth.privileges = privileges
+		end
+		minetest.notify_authentication_modified(name)
+	end,
+	reload = function()
+		minepass:load_players()
+		-- The wrapper reloads in full once connected, so the auth is current
+		-- (changes sent since a snapshot are not persisted across restarts).
+		if minepass.wrapper_connected then
+			minepass.auth_ready = true
+		end
+		return true
+	end,
+	record_login = function(name)
+		local auth = minepass.players[name]
+		if auth then
+			auth.last_login = os.time()
+		end
+	end
+})
+
+
 --
 -- Game Hooks
 
 minetest.register_on_prejoinplayer(function(name, ip)
+	-- Until the wrapper has connected and reloaded it, the auth may be out of date.
+	if not minepass.auth_ready then
+		return "MinePass is starting, please try again shortly."
+	end
+
 	if minepass.players[name] then
 		return
 	end
 
 	return "You do not have a MinePass for this server.\n" .. minepass.wrapper_vars.join_url
 end)
+
+minetest.register_on_joinplayer(function(player)
+	local name = player:get_player_name()
+	minepass:record("join", name, minetest.get_player_ip(name) or "")
+end)
+
+minetest.register_on_leaveplayer(function(player, timed_out)
+	minepass:record("leave", player:get_player_name(), timed_out and 1 or 0)
+end)
@@ -0,0 +1,151 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.api.gameserver.MPWorldServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Shared inputs for the wrapper benchmarks.
+ * <p>
+ * The roster is synthetic but deterministic (fixed seed), so results are
+ * comparable across versions. The log corpus stored with the benchmark
+ * sources is also synthetic: Minetest 0.4.13 style output with the 0.3.0
+ * mod's MP| records, player joins and leaves, Lua errors and a high volume
+ * of emerge and block sending noise, in roughly the proportions of a busy
+ * server. It is not a capture of a real server.
+ */
+final class BenchmarkFixtures {
+
+    static final String CORPUS_RESOURCE = "/minetest-debug.txt";
+
+    private static final List<List<String>> PRIVILEGE_SETS = Arrays.asList(
+            Arrays.asList("mt:interact", "mt:shout"),
+            Arrays.asList("mt:interact", "mt:shout", "mt:home"),
+            Arrays.asList("mt:interact", "mt:shout", "mt:home", "mt:fast", "web:forum"),
+            Arrays.asList("mt:interact", "mt:shout", "mt:fly", "mt:fast", "mt:noclip"),
+            Arrays.asList("mt:all"),
+            Arrays.asList("web:forum")
+    );
+
+    private BenchmarkFixtures() {
+    }
+
+    static String loadCorpus() throws IOException {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream(CORPUS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing benchmark corpus: ".concat(CORPUS_RESOURCE));
+            }
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                data.write(chunk, 0, n);
+            }
+            return new String(data.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Build server data with the given number of players, plus 1% bypass players.
+     */
+    static MPWorldServer syntheticServer(int players) {
+        Random random = new Random(players);
+        MPWorldServer server = new MPWorldServer();
+        server.players = new ArrayList<>();
+        server.bypass_players = new HashMap<>();
+
+        for (int i = 0; i < players; i++) {
+            MPPlayer p = new MPPlayer();
+            p.name = playerName(i);
+            p.secret = String.format("#1#%08x#%032x", random.nextInt(), random.nextLong());
+            p.realm = (i % 50 == 0) ? "mc" : "os";
+            int set = random.nextInt(100);
+            p.privileges = new ArrayList<>(PRIVILEGE_SETS.get(
+                    set < 60 ? 0 : set < 80 ? 1 : set < 90 ? 2 : set < 96 ? 3 : set < 98 ? 4 : 5
+            ));
+            setId(p, new UUID(random.nextLong(), random.nextLong()));
+            server.players.add(p);
+        }
+        for (int i = 0; i < players / 100; i++) {
+            server.bypass_players.put("guest" + i, String.format("#1#%08x", random.nextInt()));
+        }
+
+        return server;
+    }
+
+    static String playerName(int i) {
+        return String.format("Player%05d", i);
+    }
+
+    /**
+     * Create a wrapper for a throwaway world, which is enough to construct event parsers.
+     */
+    static MP_MinetestWrapper createWrapper(File worldDir) throws IOException {
+        File binary = new File(worldDir, "minetest");
+        Files.write(binary.toPath(), "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        if (!binary.setExecutable(true)) {
+            throw new IOException("Could not create stand-in server binary.");
+        }
+        return new MP_MinetestWrapper(binary.getPath(), worldDir.getPath(), true);
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Player ids are normally only populated by the MinePass data store.
+     */
+    private static void setId(MPPlayer player, UUID id) {
+        try {
+            Field field = MPPlayer.class.getDeclaredField("id");
+            field.setAccessible(true);
+            field.set(player, field.getType() == String.class ? id.toString() : id);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to assign synthetic player id.", e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.parsers.PlayerLoginEventParser;
+import net.minepass.gs.mt.wrapper.parsers.PlayerLogoutEventParser;
+import net.minepass.gs.mt.wrapper.parsers.ServerStartEventParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Server output hot path: tokenizing and dispatching one pass of the
+ * synthetic log corpus (see BenchmarkFixtures).
+ * <p>
+ * Parsers use their real patterns and literals, but do not act on matches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LogPipelineBenchmark {
+
+    // The log pattern used before LogLine, kept as a baseline.
+    private static final Pattern legacyLogPattern = Pattern.compile(
+            "^(?<ts>[0-9: -]+): (?<output>(?<level>[A-Z]+)(\\[(?<thread>[a-zA-Z]+)\\]): (?<msg>.*))$"
+    );
+
+    private String corpus;
+    private File worldDir;
+    private EventDispatcher dispatcher;
+    private final LogLine line = new LogLine();
+
+    @Setup
+    public void setup() throws IOException {
+        corpus = BenchmarkFixtures.loadCorpus();
+        worldDir = Files.createTempDirectory("mp-bench").toFile();
+        MP_MinetestWrapper wrapper = BenchmarkFixtures.createWrapper(worldDir);
+
+        dispatcher = new EventDispatcher();
+        dispatcher.register(new ServerStartEventParser(wrapper) {
+            @Override
+            protected Status run(Matcher m) {
+                return Status.HANDLED;
+            }
+
+            @Override
+            protected boolean isEnabled() {
+                return true;
+            }
+        });
+        dispatcher.register(new PlayerLoginEventParser(wrapper) {
+            @Override
+            protected Status run(Matcher m) {
+                return Status.HANDLED;
+            }
+
+            @Override
+            protected boolean isEnabled() {
+                return true;
+            }
+        });
+        dispatcher.register(new PlayerLogoutEventParser(wrapper) {
+            @Override
+            protected Status run(Matcher m) {
+                return Status.HANDLED;
+            }
+
+            @Override
+            protected boolean isEnabled() {
+                return true;
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFixtures.deleteRecursively(worldDir);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) throws IOException {
+        LogLineReader reader = new LogLineReader(new StringReader(corpus));
+        while (reader.readLine(line)) {
+            bh.consume(line.isFormatted());
+        }
+    }
+
+    @Benchmark
+    public void tokenizeAndDispatch(Blackhole bh) throws IOException {
+        LogLineReader reader = new LogLineReader(new StringReader(corpus));
+        while (reader.readLine(line)) {
+            if (line.isFormatted()) {
+                bh.consume(dispatcher.dispatch(line.getLevel(), line.getThread(), line.getMessage()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacyRegexTokenize(Blackhole bh) {
+        int start = 0;
+        int end;
+        while ((end = corpus.indexOf('\n', start)) != -1) {
+            Matcher m = legacyLogPattern.matcher(corpus.substring(start, end));
+            if (m.find()) {
+                bh.consume(m.group("level"));
+                bh.consume(m.group("thread"));
+                bh.consume(m.group("msg"));
+            }
+            start = end + 1;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.api.gameserver.MPWorldServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Player lookups by login name, as done by MinePassMT#getPlayerByName
+ * for every join, and the cost of rebuilding the index after a sync.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayerLookupBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private MPWorldServer server;
+    private PlayerIndex index;
+    private String[] lookups;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        server = BenchmarkFixtures.syntheticServer(players);
+        index = new PlayerIndex(server);
+
+        // Login names differ in case from the roster, and one in ten is unknown.
+        Random random = new Random(42);
+        lookups = new String[1024];
+        for (int i = 0; i < lookups.length; i++) {
+            String name = BenchmarkFixtures.playerName(random.nextInt(players));
+            lookups[i] = (i % 10 == 0) ? "guest".concat(name) : name.toLowerCase();
+        }
+    }
+
+    @Benchmark
+    public MPPlayer getByName() {
+        next = (next + 1) & (lookups.length - 1);
+        return index.getByName(lookups[next]);
+    }
+
+    @Benchmark
+    public PlayerIndex rebuild() {
+        return new PlayerIndex(server);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.api.gameserver.MPWorldServer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tracks the auth data last delivered to a mod that accepts auth changes,
+ * and renders the changes since as commands.
+ * <p>
+ * Each player's secret and privileges are kept along with their auth line,
+ * so only players whose data changed are rendered again. The core provides
+ * no set of changed players, so finding them still visits every player,
+ * but unchanged players cost only a comparison of their fields.
+ * <p>
+ * Changed players are rendered as "@auth_set [auth line]" commands, and
+ * removed players as "@auth_del [name]".
+ *
+ * @see AuthRenderer
+ */
+public class AuthDeltaTracker {
+
+    private static final class Entry {
+        String secret;
+        List<String> privileges;
+        boolean bypass;
+
+        /**
+         * The delivered auth line, or null if the player was omitted (no privileges).
+         */
+        String line;
+        long pass;
+    }
+
+    private final AuthRenderer renderer;
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final StringBuilder sb = new StringBuilder();
+    private long pass = 0;
+
+    public AuthDeltaTracker(AuthRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Compare the server data with that last delivered, and record it as delivered.
+     *
+     * @param server   the current server data
+     * @param commands receives the commands for the changes
+     * @return the number of players rendered
+     */
+    public synchronized int update(MPWorldServer server, List<String> commands) {
+        long current = ++pass;
+        int rendered = 0;
+
+        if (server.players != null) {
+            for (MPPlayer p : server.players) {
+                if (!p.realm.equalsIgnoreCase("os")) {
+                    continue;
+                }
+                if (server.bypass_players != null && server.bypass_players.containsKey(p.name)) {
+                    // Bypass players take precedence, as in the auth files.
+                    continue;
+                }
+
+                Entry entry = entries.get(p.name);
+                if (entry != null && !entry.bypass && Objects.equals(entry.secret, p.secret)
+                        && Objects.equals(entry.privileges, p.privileges)) {
+                    entry.pass = current;
+                    continue;
+                }
+
+                sb.setLength(0);
+                renderer.appendPlayer(sb, p);
+                entry = deliver(entry, p.name, sb.length() > 0 ? sb.substring(0, sb.length() - 1) : null, commands);
+                entry.secret = p.secret;
+                entry.privileges = p.privileges == null ? null : new ArrayList<>(p.privileges);
+                entry.bypass = false;
+                entry.pass = current;
+                rendered++;
+            }
+        }
+
+        if (server.bypass_players != null) {
+            for (Map.Entry<String, String> bypass : server.bypass_players.entrySet()) {
+                Entry entry = entries.get(bypass.getKey());
+                if (entry != null && entry.bypass && Objects.equals(entry.secret, bypass.getValue())) {
+                    entry.pass = current;
+                    continue;
+                }
+
+                sb.setLength(0);
+                renderer.appendBypassPlayer(sb, bypass.getKey(), bypass.getValue());
+                entry = deliver(entry, bypass.getKey(), sb.substring(0, sb.length() - 1), commands);
+                entry.secret = bypass.getValue();
+                entry.privileges = null;
+                entry.bypass = true;
+                entry.pass = current;
+                rendered++;
+            }
+        }
+
+        // Players not seen in this pass were removed.
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getValue().pass != current) {
+                if (e.getValue().line != null) {
+                    commands.add("@auth_del ".concat(e.getKey()));
+                }
+                it.remove();
+            }
+        }
+
+        return rendered;
+    }
+
+    /**
+     * @return the number of players tracked
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Entry deliver(Entry entry, String name, String line, List<String> commands) {
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(name, entry);
+        }
+        if (line == null) {
+            if (entry.line != null) {
+                commands.add("@auth_del ".concat(name));
+            }
+        } else if (!line.equals(entry.line)) {
+            commands.add("@auth_set ".concat(line));
+        }
+        entry.line = line;
+        return entry;
+    }
+}
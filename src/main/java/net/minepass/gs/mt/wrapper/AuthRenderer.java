@@ -0,0 +1,82 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.api.gameserver.MPWorldServer;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Renders MinePass server data in the Minetest auth.txt format.
+ * <p>
+ * Players are written as "name:secret:privileges" and bypass players
+ * as "name:identity", one per line.
+ *
+ * @see PrivilegeRegistry
+ */
+public class AuthRenderer {
+
+    private final PrivilegeRegistry privileges;
+
+    public AuthRenderer(Collection<String> allPrivileges) {
+        this.privileges = new PrivilegeRegistry(allPrivileges);
+    }
+
+    public String render(MPWorldServer server) {
+        StringBuilder sb = new StringBuilder();
+        for (MPPlayer p : server.players) {
+            if (p.realm.equalsIgnoreCase("os")) {
+                appendPlayer(sb, p);
+            }
+        }
+        for (Map.Entry<String, String> bypass : server.bypass_players.entrySet()) {
+            appendBypassPlayer(sb, bypass.getKey(), bypass.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Players without any Minetest privileges are omitted.
+     */
+    public void appendPlayer(StringBuilder sb, MPPlayer player) {
+        BitSet bits = privileges.expand(player.privileges);
+        if (!bits.isEmpty()) {
+            sb.append(player.name).append(':')
+                    .append(player.secret).append(':')
+                    .append(privileges.render(bits)).append('\n');
+        }
+    }
+
+    public void appendBypassPlayer(StringBuilder sb, String name, String identity) {
+        sb.append(name).append(':').append(identity).append('\n');
+    }
+
+    public PrivilegeRegistry getPrivileges() {
+        return privileges;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.embed.solidtx.TxLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Queue;
+
+/**
+ * Append-only journal of commands to be executed by the MinePass mod.
+ * <p>
+ * The journal starts with a header line "MPJ [generation]", followed by
+ * one line per command: "[seq] [command]", where seq increases by one for
+ * every command ever written. Commands are appended and synced to disk in
+ * batches, each preceded by a line "T [time]" giving the time it was written
+ * (ms since the epoch), from which delivery latency can be measured. Every
+ * queued command triggers a flush, so this is close to when it was queued.
+ * Lines without a sequence number are ignored by the mod, and dropped when
+ * the journal is compacted.
+ * <p>
+ * The mod reads the journal by byte offset, executes every record whose
+ * sequence number is greater than the last one it has acknowledged, and
+ * then stores that number in the ack file. Sequence numbers (rather than
+ * offsets) decide what is executed, so neither side loses commands when
+ * the other restarts.
+ * <p>
+ * The mod saves its ack before running each command, and reloads it when
+ * the server starts, so no command runs twice. Commands such as kicks and
+ * messages are not idempotent. The one command that can go unexecuted is
+ * one the server crashes in the middle of.
+ * <p>
+ * The mod reads the journal in chunks of MAX_RECORD bytes, so longer
+ * records could never be read. They are refused here, and skipped by the
+ * mod should one appear anyway.
+ * <p>
+ * Acknowledged records are compacted away when the journal is opened, and
+ * whenever it has grown past COMPACT_SIZE. The server may be running at
+ * that point, so a rewritten journal always gets a new generation. The mod
+ * only trusts its byte offset while the generation is unchanged, and
+ * otherwise rescans from the header.
+ *
+ * @see MTGameserverTasks#sendCommands()
+ */
+public class CommandJournal {
+
+    private static final int MAX_BATCH = 1000;
+    private static final String HEADER = "MPJ ";
+    static final String BATCH_TIME = "T ";
+    private static final int COMPACT_SIZE = 64 * 1024;
+    static final int MAX_RECORD = 64 * 1024;
+
+    private final File journalFile;
+    private final File ackFile;
+    private long lastSequence;
+    private long generation;
+    private long firstSequence;
+    private long size;
+
+    public CommandJournal(File journalFile, File ackFile) throws IOException {
+        this.journalFile = journalFile;
+        this.ackFile = ackFile;
+        open();
+    }
+
+    /**
+     * Append pending commands from the queue to the journal.
+     * <p>
+     * Commands are only removed from the queue once they have been
+     * written and synced, so a failed write leaves them queued. Commands
+     * too long for the mod to read are logged and discarded.
+     *
+     * @param queue the pending commands
+     * @return the number of commands written
+     * @throws IOException
+     */
+    public synchronized int append(Queue<String> queue) throws IOException {
+        if (queue.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder batch = new StringBuilder();
+        batch.append(BATCH_TIME).append(System.currentTimeMillis()).append('\n');
+        long seq = lastSequence;
+        int count = 0;
+        int taken = 0;
+        Iterator<String> it = queue.iterator();
+        while (it.hasNext() && count < MAX_BATCH) {
+            String command = it.next().replace('\n', ' ').replace('\r', ' ');
+            taken++;
+            if (isOversize(command)) {
+                TxLog.log(TxLog.Level.ERROR, String.format(
+                        "Discarding command longer than %d bytes: %s...", MAX_RECORD, command.substring(0, 40)
+                ));
+                continue;
+            }
+            batch.append(++seq).append(' ').append(command).append('\n');
+            count++;
+        }
+
+        if (count > 0) {
+            byte[] data = batch.toString().getBytes(StandardCharsets.UTF_8);
+            try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+                out.write(data);
+                out.getChannel().force(false);
+            }
+            size += data.length;
+            lastSequence = seq;
+        }
+
+        for (int i = 0; i < taken; i++) {
+            queue.remove();
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the command's record would not fit in MAX_RECORD bytes
+     */
+    static boolean isOversize(String command) {
+        // Allow for the sequence number and separators, and at most 3 UTF-8 bytes per char.
+        if (command.length() * 3 + 22 <= MAX_RECORD) {
+            return false;
+        }
+        return command.getBytes(StandardCharsets.UTF_8).length + 22 > MAX_RECORD;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Compact the journal if it has grown past COMPACT_SIZE and the mod has
+     * acknowledged some of its records.
+     *
+     * @param acknowledged the mod's last acknowledged sequence number
+     * @return true if the journal was compacted
+     * @throws IOException
+     */
+    public synchronized boolean compact(long acknowledged) throws IOException {
+        if (size < COMPACT_SIZE || acknowledged < firstSequence) {
+            return false;
+        }
+        rewrite(acknowledged);
+        return true;
+    }
+
+    /**
+     * Read the mod's acknowledgement: "[seq] [budget used (us)] [backlog]".
+     *
+     * @return the acknowledgement, or an empty one if the mod has not executed anything yet
+     */
+    public Acknowledgement readAcknowledgement() {
+        if (ackFile.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(ackFile), StandardCharsets.UTF_8))) {
+                String line = reader.readLine();
+                if (line != null) {
+                    String[] fields = line.trim().split(" ");
+                    return new Acknowledgement(
+                            Long.parseLong(fields[0]),
+                            fields.length > 1 ? Long.parseLong(fields[1]) : 0,
+                            fields.length > 2 ? Long.parseLong(fields[2]) : 0
+                    );
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Ack is rewritten by the mod, treat unreadable as not yet acknowledged.
+            }
+        }
+        return new Acknowledgement(0, 0, 0);
+    }
+
+    /**
+     * Command progress as reported by the mod.
+     */
+    public static class Acknowledgement {
+        /**
+         * Sequence number of the last executed command.
+         */
+        public final long sequence;
+
+        /**
+         * Microseconds spent executing commands during the mod's last server step.
+         */
+        public final long budgetUsed;
+
+        /**
+         * Commands read by the mod but deferred to later server steps.
+         */
+        public final long backlog;
+
+        public Acknowledgement(long sequence, long budgetUsed, long backlog) {
+            this.sequence = sequence;
+            this.budgetUsed = budgetUsed;
+            this.backlog = backlog;
+        }
+    }
+
+    /**
+     * Determine the last sequence number, and compact the journal.
+     */
+    private void open() throws IOException {
+        long acknowledged = readAcknowledgement().sequence;
+        lastSequence = acknowledged;
+        rewrite(acknowledged);
+    }
+
+    /**
+     * Rewrite the journal under a new generation without the records that the
+     * mod has already executed (or any partial record left behind by an
+     * interrupted write).
+     */
+    private void rewrite(long acknowledged) throws IOException {
+        long previousGeneration = generation;
+
+        StringBuilder pending = new StringBuilder();
+        String content = "";
+        if (journalFile.isFile()) {
+            content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8);
+        }
+
+        int start = 0;
+        int end;
+        while ((end = content.indexOf('\n', start)) != -1) {
+            String record = content.substring(start, end);
+            start = end + 1;
+
+            if (record.startsWith(HEADER)) {
+                try {
+                    previousGeneration = Long.parseLong(record.substring(HEADER.length()));
+                } catch (NumberFormatException e) {
+                    // Replaced below.
+                }
+                continue;
+            }
+
+            int sep = record.indexOf(' ');
+            long seq;
+            try {
+                seq = sep > 0 ? Long.parseLong(record.substring(0, sep)) : -1;
+            } catch (NumberFormatException e) {
+                seq = -1;
+            }
+
+            if (seq > acknowledged) {
+                pending.append(record).append('\n');
+                lastSequence = Math.max(lastSequence, seq);
+            }
+        }
+
+        generation = Math.max(System.currentTimeMillis(), previousGeneration + 1);
+        pending.insert(0, HEADER + generation + "\n");
+        byte[] data = pending.toString().getBytes(StandardCharsets.UTF_8);
+        MP_MinetestWrapper.writeFileAtomically(journalFile, data);
+        firstSequence = acknowledged + 1;
+        size = data.length;
+    }
+}
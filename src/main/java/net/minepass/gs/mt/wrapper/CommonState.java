@@ -24,27 +24,59 @@
 
 package net.minepass.gs.mt.wrapper;
 
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class CommonState {
 
     public String minetestBinary = null;
     public String minetestVersion = null;
     public String minetestWorldPath = null;
-    public boolean minepassStarted = false;
+    public volatile boolean minepassStarted = false;
 
     /**
-     * Store player UUIDs as presented by authenticator events.
+     * The mod reports events as structured records, so the log parsers stand down.
+     *
+     * @see ModRecordDecoder
      */
-    public final ConcurrentHashMap<String,UUID> playerAuthUUIDs = new ConcurrentHashMap<>();
-    public final ConcurrentHashMap<UUID,String> playerAuthNames = new ConcurrentHashMap<>();
+    public volatile boolean modRecords = false;
+
+    /**
+     * The mod keeps auth in memory, and accepts changes in place of full reloads.
+     *
+     * @see MinePassMT#getAuthChanges(boolean)
+     */
+    public volatile boolean modAuthChanges = false;
 
     /**
      * Current players per the login/logout events.
-     * This is stored in [name]=uuid format since most log events use player names.
+     * Updated by swapping in a new snapshot, so that readers see a consistent roster.
+     *
+     * @see PlayerSessionRegistry
+     */
+    public final AtomicReference<CurrentPlayers> currentPlayers = new AtomicReference<>(CurrentPlayers.EMPTY);
+
+    /**
+     * Players whose login is still within the grace period. [name]=deferred action
+     * They are moved to currentPlayers (and become subject to pass checks) once it expires.
+     */
+    public final ConcurrentHashMap<String,ScheduledFuture<?>> pendingLogins = new ConcurrentHashMap<>();
+
+    /**
+     * Command delivery progress, as last reported by the mod.
+     *
+     * @see CommandJournal.Acknowledgement
+     */
+    public volatile long modCommandSequence = 0;
+    public volatile long modCommandBudgetUsed = 0;
+    public volatile long modCommandBacklog = 0;
+
+    /**
+     * Server step timing (us), as last reported by the mod.
      */
-    public final ConcurrentHashMap<String,UUID> currentPlayers = new ConcurrentHashMap<>();
+    public volatile long modStepAverage = 0;
+    public volatile long modStepMax = 0;
 
     /**
      * Store and collate plugins. [Name=Version]
@@ -0,0 +1,341 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.embed.solidtx.TxLog;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The ConsoleForwarder re-logs server output on a writer executor, which
+ * may be shared by several worlds (their output all goes to one console).
+ * <p>
+ * Lines are copied into a bounded ring buffer of reusable slots, and
+ * written out in batches, so that a slow console never holds up event
+ * parsing. A batch is written per executor task, so worlds sharing the
+ * executor take turns. When the buffer is full the configured overflow policy applies:
+ * <ul>
+ * <li>drop_oldest - discard the oldest buffered line (default)</li>
+ * <li>block - wait for the writer, so nothing is lost, at the cost of
+ * holding up event parsing behind the console</li>
+ * <li>sample - once the buffer is 3/4 full, keep only every Nth line</li>
+ * </ul>
+ * Minetest keeps its own complete debug log, so dropping console output
+ * under pressure loses nothing permanently.
+ * <p>
+ * Configuration: console_buffer, console_overflow, console_sample_rate,
+ * and console_levels (comma separated, default all levels, or none to
+ * write nothing at all). Invalid
+ * settings are reported, and replaced by their defaults.
+ * <p>
+ * Lines not in the log format (such as stack traces) usually continue
+ * the preceding log message, so they are filtered by its level.
+ * <p>
+ * Until MinePass provides a logger, lines are written to the default log.
+ */
+public class ConsoleForwarder {
+
+    public enum OverflowPolicy {
+        BLOCK, DROP_OLDEST, SAMPLE
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final class Slot {
+        final StringBuilder text = new StringBuilder(128);
+        boolean error;
+    }
+
+    private final Supplier<TxLog> logger;
+    private final Object source;
+
+    private final Slot[] slots;
+    private int head = 0;
+    private int size = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private boolean closed = false;
+
+    private final Executor writer;
+    private boolean writing = false;
+    private final String[] batch = new String[BATCH_SIZE];
+    private final boolean[] batchError = new boolean[BATCH_SIZE];
+
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private long sampleCount = 0;
+    private final String[] levels;
+    private boolean continuationEnabled = true;
+
+    private final Counter forwarded;
+    private final Counter dropped;
+    private final Counter filtered;
+
+    public ConsoleForwarder(Supplier<TxLog> logger, Object source, Executor writer, Properties config, Metrics metrics) {
+        this.logger = logger;
+        this.source = source;
+        this.writer = writer;
+
+        // Slots are allocated on first use, so an idle buffer costs little memory.
+        this.slots = new Slot[Math.max(16, getPositiveSetting(config, "console_buffer", 8192))];
+        this.overflowPolicy = getOverflowPolicy(config);
+        this.sampleRate = getPositiveSetting(config, "console_sample_rate", 10);
+
+        String levelList = config.getProperty("console_levels", "").trim();
+        if (levelList.isEmpty()) {
+            this.levels = null;
+        } else if (levelList.equalsIgnoreCase("none")) {
+            this.levels = new String[0];
+            this.continuationEnabled = false;
+        } else {
+            this.levels = levelList.toUpperCase(Locale.ROOT).split(" *, *");
+        }
+
+        this.forwarded = metrics.counter("minepass_console_lines_total", "Server output lines written to the console.");
+        this.dropped = metrics.counter("minepass_console_dropped_total", "Server output lines dropped on console overflow.");
+        this.filtered = metrics.counter("minepass_console_filtered_total", "Server output lines excluded by console_levels.");
+        metrics.gauge("minepass_console_buffer_depth", "Server output lines waiting for the console.", this::getDepth);
+    }
+
+    private static int getPositiveSetting(Properties config, String key, int defaultValue) {
+        String value = config.getProperty(key, String.valueOf(defaultValue)).trim();
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        TxLog.log(TxLog.Level.ERROR, String.format(
+                "Invalid %s setting \"%s\" (expected a positive number), using %d.", key, value, defaultValue
+        ));
+        return defaultValue;
+    }
+
+    private static OverflowPolicy getOverflowPolicy(Properties config) {
+        String value = config.getProperty("console_overflow", "drop_oldest").trim();
+        try {
+            return OverflowPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            TxLog.log(TxLog.Level.ERROR, String.format(
+                    "Invalid console_overflow setting \"%s\" (expected drop_oldest, block or sample), using drop_oldest.", value
+            ));
+            return OverflowPolicy.DROP_OLDEST;
+        }
+    }
+
+    /**
+     * Queue a log line for the console. Lines are forwarded from a single thread.
+     *
+     * @param level  the log level, or null if the line is not in the log format
+     * @param output the text to write
+     */
+    public void forward(CharSequence level, CharSequence output) {
+        if (level != null) {
+            continuationEnabled = isLevelEnabled(level);
+        }
+        if (!continuationEnabled) {
+            filtered.increment();
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!reserveSlot()) {
+                dropped.increment();
+                return;
+            }
+
+            int i = (head + size) % slots.length;
+            Slot slot = slots[i];
+            if (slot == null) {
+                slot = slots[i] = new Slot();
+            }
+            slot.text.setLength(0);
+            if (level == null) {
+                slot.text.append('*');
+            }
+            slot.text.append(output);
+            slot.error = level != null && contentEquals(level, "ERROR");
+
+            size++;
+            if (writing) {
+                return;
+            }
+            writing = true;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writer.execute(this::writeBatch);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, write on this thread instead.
+            writeBatch();
+        }
+    }
+
+    /**
+     * Make room for a line according to the overflow policy (lock held).
+     *
+     * @return false if the line should be dropped
+     */
+    private boolean reserveSlot() {
+        switch (overflowPolicy) {
+            case BLOCK:
+                while (size == slots.length && !closed) {
+                    notFull.awaitUninterruptibly();
+                }
+                return !closed;
+            case SAMPLE:
+                if (size >= slots.length * 3 / 4 && (sampleCount++ % sampleRate) != 0) {
+                    return false;
+                }
+                return size < slots.length;
+            default:
+                if (size == slots.length) {
+                    head = (head + 1) % slots.length;
+                    size--;
+                    dropped.increment();
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Write one batch of buffered lines, then queue another if more remain.
+     */
+    private void writeBatch() {
+        int n;
+        lock.lock();
+        try {
+            n = Math.min(size, BATCH_SIZE);
+            for (int i = 0; i < n; i++) {
+                Slot slot = slots[(head + i) % slots.length];
+                batch[i] = slot.text.toString();
+                batchError[i] = slot.error;
+            }
+            head = (head + n) % slots.length;
+            size -= n;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        // Write outside the lock, so a slow console only delays the writer.
+        TxLog log = logger.get();
+        for (int i = 0; i < n; i++) {
+            if (log == null) {
+                TxLog.log(batchError[i] ? TxLog.Level.ERROR : TxLog.Level.INFO, batch[i]);
+            } else if (batchError[i]) {
+                log.error(batch[i], source);
+            } else {
+                log.info(batch[i], source);
+            }
+            batch[i] = null;
+        }
+        forwarded.add(n);
+
+        lock.lock();
+        try {
+            if (size == 0) {
+                writing = false;
+                idle.signalAll();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writer.execute(this::writeBatch);
+        } catch (RejectedExecutionException e) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Stop accepting lines, and wait (briefly) for buffered lines to be written.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            long timeout = TimeUnit.SECONDS.toNanos(5);
+            while (writing && timeout > 0) {
+                timeout = idle.awaitNanos(timeout);
+            }
+        } catch (InterruptedException e) {
+            // Ignore.
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isLevelEnabled(CharSequence level) {
+        if (levels == null) {
+            return true;
+        }
+        for (String l : levels) {
+            if (contentEquals(level, l)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contentEquals(CharSequence a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < b.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -35,7 +35,7 @@ import java.io.InputStreamReader;
  * be sent to the server from the other MinePass threads.
  *
  * As Minetest does not yet offer an interactive console of its own
- * commands are rerouted through a queue and later delivered as part of
+ * commands are rerouted through a queue and delivered promptly by
  * the scheduled gameserver tasks.
  *
  */
@@ -68,7 +68,13 @@ public class ConsoleManager implements Runnable {
 
     public void sendCommand(String command) {
 //      bridge.write(command + "\n");
-        wrapper.getMinepass().commandQueue.add(command);
+        if (wrapper.awaitMinePass()) {
+            wrapper.getMinepass().commandQueue.add(command);
+            MTGameserverTasks tasks = wrapper.getServerManager().getScheduledTasks();
+            if (tasks != null) {
+                tasks.commandsQueued();
+            }
+        }
     }
 
 
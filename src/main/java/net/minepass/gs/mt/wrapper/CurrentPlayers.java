@@ -0,0 +1,113 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Snapshot of the current players.
+ * <p>
+ * The snapshot is immutable. Join and leave handlers derive a new one and
+ * swap it in as a whole, so readers never need to lock or copy. Every change
+ * increments the version, so an unchanged version means an unchanged roster.
+ *
+ * @see CommonState#currentPlayers
+ */
+public final class CurrentPlayers {
+
+    public static final CurrentPlayers EMPTY = new CurrentPlayers(0, new HashMap<>(), new HashMap<>());
+
+    private final long version;
+    private final HashMap<String, UUID> idsByName;
+    private final Map<UUID, String> namesById;
+
+    private CurrentPlayers(long version, HashMap<String, UUID> idsByName, HashMap<UUID, String> namesById) {
+        this.version = version;
+        this.idsByName = idsByName;
+        this.namesById = Collections.unmodifiableMap(namesById);
+    }
+
+    /**
+     * @return a snapshot including the given player
+     */
+    public CurrentPlayers with(String name, UUID id) {
+        if (id.equals(idsByName.get(name))) {
+            return this;
+        }
+        HashMap<String, UUID> byName = new HashMap<>(idsByName);
+        HashMap<UUID, String> byId = new HashMap<>(namesById);
+        UUID previous = byName.put(name, id);
+        if (previous != null) {
+            byId.remove(previous);
+        }
+        byId.put(id, name);
+        return new CurrentPlayers(version + 1, byName, byId);
+    }
+
+    /**
+     * @return a snapshot excluding the given player
+     */
+    public CurrentPlayers without(String name) {
+        if (!idsByName.containsKey(name)) {
+            return this;
+        }
+        HashMap<String, UUID> byName = new HashMap<>(idsByName);
+        HashMap<UUID, String> byId = new HashMap<>(namesById);
+        byId.remove(byName.remove(name));
+        return new CurrentPlayers(version + 1, byName, byId);
+    }
+
+    /**
+     * @return a snapshot with no players
+     */
+    public CurrentPlayers cleared() {
+        if (idsByName.isEmpty()) {
+            return this;
+        }
+        return new CurrentPlayers(version + 1, new HashMap<>(), new HashMap<>());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the players as [uuid]=name (unmodifiable)
+     */
+    public Map<UUID, String> getPlayers() {
+        return namesById;
+    }
+
+    public UUID getId(String name) {
+        return idsByName.get(name);
+    }
+
+    public int size() {
+        return idsByName.size();
+    }
+}
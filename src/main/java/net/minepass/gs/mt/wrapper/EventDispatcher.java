@@ -0,0 +1,187 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The EventDispatcher routes log messages to the registered event parsers.
+ * <p>
+ * Parsers may declare a literal that every match of their pattern contains.
+ * All such literals are combined into a single prefilter, which finds the
+ * candidate parsers for a message in one pass over it, so that only those
+ * run their full pattern. Parsers without a literal are always candidates.
+ * <p>
+ * Candidates are tried in registration order until one handles the
+ * message. A parser returning HOLD receives all further messages from
+ * the same thread until it completes.
+ * <p>
+ * Messages are accepted as CharSequence views, and no objects are created
+ * for messages that no parser is interested in.
+ *
+ * @see EventParser#getLiteralString(String)
+ */
+public class EventDispatcher {
+
+    private static final int MAX_PARSERS = Long.SIZE;
+    private static final int BUCKETS = 128;
+
+    private final ArrayList<EventParser> eventParsers = new ArrayList<>();
+    private final HashMap<String, EventParser> eventParserHold = new HashMap<>();
+
+    // Parsers that must always be tried, and those covered by the prefilter.
+    private long unfilteredParsers = 0;
+    private long filteredParsers = 0;
+
+    // Literals bucketed by first character, with the parsers requiring each.
+    private final String[][] literalBuckets = new String[BUCKETS][];
+    private final long[][] literalParsers = new long[BUCKETS][];
+
+    public void register(EventParser parser) {
+        if (eventParsers.size() >= MAX_PARSERS) {
+            throw new IllegalStateException("Too many event parsers registered.");
+        }
+
+        long bit = 1L << eventParsers.size();
+        eventParsers.add(parser);
+
+        String literal = parser.getLiteral();
+        if (literal == null || literal.isEmpty()) {
+            unfilteredParsers |= bit;
+            return;
+        }
+        filteredParsers |= bit;
+
+        int b = literal.charAt(0) % BUCKETS;
+        String[] literals = literalBuckets[b];
+        if (literals == null) {
+            literalBuckets[b] = new String[]{literal};
+            literalParsers[b] = new long[]{bit};
+            return;
+        }
+        int i = Arrays.asList(literals).indexOf(literal);
+        if (i >= 0) {
+            literalParsers[b][i] |= bit;
+        } else {
+            literalBuckets[b] = Arrays.copyOf(literals, literals.length + 1);
+            literalBuckets[b][literals.length] = literal;
+            literalParsers[b] = Arrays.copyOf(literalParsers[b], literals.length + 1);
+            literalParsers[b][literals.length] = bit;
+        }
+    }
+
+    /**
+     * Pass a log message to the held or candidate parsers.
+     *
+     * @param level   the log level
+     * @param thread  the name of the logging thread
+     * @param message the log message
+     * @return the status returned by the parser, or IGNORED
+     */
+    public EventParser.Status dispatch(CharSequence level, CharSequence thread, CharSequence message) {
+        EventParser.Status status;
+
+        if (!eventParserHold.isEmpty()) {
+            String threadName = thread.toString();
+            EventParser held = eventParserHold.get(threadName);
+            if (held != null) {
+                // This log entry should be applied to an existing event on a held thread.
+                //
+                status = held.acceptLogMessage(message, true);
+                if (status == EventParser.Status.HANDLED) {
+                    eventParserHold.remove(threadName);
+                }
+                return status;
+            }
+        }
+
+        long candidates = unfilteredParsers | findLiteralParsers(message);
+        while (candidates != 0) {
+            EventParser p = eventParsers.get(Long.numberOfTrailingZeros(candidates));
+            candidates &= candidates - 1;
+
+            if (!p.isEnabled())
+                continue;
+
+            if (!p.filterLevel(level))
+                continue;
+
+            if (!p.filterThread(thread))
+                continue;
+
+            status = p.acceptLogMessage(message, false);
+
+            switch (status) {
+                case HANDLED:
+                    return status;
+                case HOLD:
+                    eventParserHold.put(thread.toString(), p);
+                    return status;
+            }
+        }
+
+        return EventParser.Status.IGNORED;
+    }
+
+    /**
+     * Scan the message once for all registered literals.
+     *
+     * @return the parsers whose literal occurs in the message
+     */
+    private long findLiteralParsers(CharSequence message) {
+        long found = 0;
+        int length = message.length();
+
+        for (int i = 0; i < length && found != filteredParsers; i++) {
+            int b = message.charAt(i) % BUCKETS;
+            String[] literals = literalBuckets[b];
+            if (literals == null)
+                continue;
+
+            for (int j = 0; j < literals.length; j++) {
+                if (regionMatches(message, i, literals[j])) {
+                    found |= literalParsers[b][j];
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private static boolean regionMatches(CharSequence s, int offset, String literal) {
+        int length = literal.length();
+        if (offset + length > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(offset + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
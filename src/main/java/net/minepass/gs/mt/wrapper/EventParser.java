@@ -24,6 +24,9 @@
 
 package net.minepass.gs.mt.wrapper;
 
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Histogram;
+
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,21 +35,23 @@ import java.util.regex.Pattern;
  * to logged output from the game server.
  * <p>
  * Each parser has a primary pattern, as well as filters
- * for thread name and log level.
+ * for thread name and log level. Parsers should also declare
+ * a literal contained in every match of the pattern, which
+ * lets the dispatcher skip them for most log messages.
  * <p>
  * Logged output that may span multiple lines can be handled by
  * returning the HOLD status from the primary pattern, after
  * which the Server Manager will continue to pass input from
  * the matching thread until told to stop.
  * <p>
- * IMPORTANT: At this time any MinePass actions are performed
- * by the parsers themselves. This will likely eventually be
- * abstracted to generate actual events, both for clarity
- * and to potentially support other plugins.
+ * Parsers publish what they observe as events on the wrapper's
+ * EventBus, and any MinePass actions are taken by its subscribers.
  *
  * @see ServerManager
+ * @see EventDispatcher
  * @see #run(Matcher)
- * @see #continuedInput(String)
+ * @see net.minepass.gs.mt.wrapper.events.EventBus
+ * @see #continuedInput(CharSequence)
  */
 public abstract class EventParser {
 
@@ -56,13 +61,34 @@ public abstract class EventParser {
 
     protected MP_MinetestWrapper wrapper;
     protected Pattern pattern;
+    protected String literal;
+
+    private final Histogram acceptTime;
+    private final Counter matches;
 
     public EventParser(MP_MinetestWrapper wrapper) {
         this.wrapper = wrapper;
         pattern = Pattern.compile(getPatternString(wrapper.getState().minetestVersion));
+        literal = getLiteralString(wrapper.getState().minetestVersion);
+
+        acceptTime = wrapper.getMetrics().histogram(
+                "minepass_parser_duration", "Time spent in event parsers.", "parser", getName());
+        matches = wrapper.getMetrics().counter(
+                "minepass_parser_matches_total", "Log messages matched by event parsers.", "parser", getName());
+    }
+
+    public Status acceptLogMessage(CharSequence logMessage, boolean continued) {
+        long start = System.nanoTime();
+        Status status = parseLogMessage(logMessage, continued);
+        acceptTime.recordSince(start);
+
+        if (!continued && status != Status.IGNORED) {
+            matches.increment();
+        }
+        return status;
     }
 
-    public Status acceptLogMessage(String logMessage, boolean continued) {
+    private Status parseLogMessage(CharSequence logMessage, boolean continued) {
         if (continued) {
             if (continuedInput(logMessage)) {
                 return Status.HOLD;
@@ -73,17 +99,19 @@ public abstract class EventParser {
 
         Matcher m = pattern.matcher(logMessage);
         if (m.find()) {
-            wrapper.getLogger().debug("Matched event parser.", this);
+            if (wrapper.getDebug()) {
+                wrapper.getLogger().debug("Matched event parser.", this);
+            }
             return run(m);
         }
         return Status.IGNORED;
     }
 
-    public boolean filterLevel(String levelName) {
+    public boolean filterLevel(CharSequence levelName) {
         return true;
     }
 
-    public boolean filterThread(String threadName) {
+    public boolean filterThread(CharSequence threadName) {
         // Minetest thread naming unpredictable across versions.
         return true;
     }
@@ -96,8 +124,34 @@ public abstract class EventParser {
         return wrapper.getServerManager();
     }
 
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return the parser's name, as used in metrics
+     */
+    public String getName() {
+        Class<?> c = getClass();
+        while (c.getSimpleName().isEmpty()) {
+            c = c.getSuperclass();
+        }
+        return c.getSimpleName();
+    }
+
     protected abstract String getPatternString(String version);
 
+    /**
+     * Text that occurs in every match of the primary pattern.
+     * The parser is only tried on log messages containing it.
+     *
+     * @param version the Minetest version
+     * @return the literal, or null to try the parser on every message
+     */
+    protected String getLiteralString(String version) {
+        return null;
+    }
+
     protected abstract Status run(Matcher m);
 
     /**
@@ -108,7 +162,7 @@ public abstract class EventParser {
      * @param logInput
      * @return
      */
-    protected boolean continuedInput(String logInput) {
+    protected boolean continuedInput(CharSequence logInput) {
         return false;
     }
 
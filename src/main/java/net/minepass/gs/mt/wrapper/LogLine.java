@@ -0,0 +1,249 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import java.util.Arrays;
+
+/**
+ * A single line of server output, split into its log fields.
+ * <p>
+ * Minetest log lines take the form "[timestamp]: [LEVEL][[thread]]: [message]".
+ * The fields are exposed as CharSequence views over the line's own buffer,
+ * which is reused for every line read into it, so tokenizing does not
+ * allocate. Views are only valid until the next line is read; use
+ * toString() to keep a copy.
+ *
+ * @see LogLineReader
+ */
+public final class LogLine implements CharSequence {
+
+    private char[] chars = new char[256];
+    private int length = 0;
+    private boolean formatted = false;
+
+    private final Field timestamp = new Field();
+    private final Field output = new Field();
+    private final Field level = new Field();
+    private final Field thread = new Field();
+    private final Field message = new Field();
+
+    /**
+     * Replace the content of this line and tokenize it.
+     *
+     * @param src    source buffer
+     * @param offset start of the line in the source buffer
+     * @param count  length of the line, excluding line terminators
+     */
+    public void set(char[] src, int offset, int count) {
+        if (chars.length < count) {
+            chars = Arrays.copyOf(chars, Math.max(count, chars.length * 2));
+        }
+        System.arraycopy(src, offset, chars, 0, count);
+        length = count;
+        formatted = tokenize();
+    }
+
+    /**
+     * Replace the content of this line with a copy of another, already tokenized, line.
+     *
+     * @param src the line to copy
+     */
+    public void copyFrom(LogLine src) {
+        if (chars.length < src.length) {
+            chars = Arrays.copyOf(chars, Math.max(src.length, chars.length * 2));
+        }
+        System.arraycopy(src.chars, 0, chars, 0, src.length);
+        length = src.length;
+        formatted = src.formatted;
+        timestamp.set(src.timestamp.start, src.timestamp.end);
+        output.set(src.output.start, src.output.end);
+        level.set(src.level.start, src.level.end);
+        thread.set(src.thread.start, src.thread.end);
+        message.set(src.message.start, src.message.end);
+    }
+
+    /**
+     * @return true if the line is in the Minetest log format, otherwise the fields are empty
+     */
+    public boolean isFormatted() {
+        return formatted;
+    }
+
+    public Field getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the level, thread and message (the line without its timestamp)
+     */
+    public Field getOutput() {
+        return output;
+    }
+
+    public Field getLevel() {
+        return level;
+    }
+
+    public Field getThread() {
+        return thread;
+    }
+
+    public Field getMessage() {
+        return message;
+    }
+
+    private boolean tokenize() {
+        int i = 0;
+
+        // Timestamp: [0-9: -]+ followed by ": "
+        while (i < length && isTimestampChar(chars[i])) {
+            i++;
+        }
+        if (i < 3 || chars[i - 2] != ':' || chars[i - 1] != ' ') {
+            return clear();
+        }
+        timestamp.set(0, i - 2);
+
+        // Level: [A-Z]+
+        int levelStart = i;
+        while (i < length && chars[i] >= 'A' && chars[i] <= 'Z') {
+            i++;
+        }
+        if (i == levelStart) {
+            return clear();
+        }
+        level.set(levelStart, i);
+
+        // Thread: "[" [a-zA-Z]+ "]"
+        if (i >= length || chars[i] != '[') {
+            return clear();
+        }
+        int threadStart = ++i;
+        while (i < length && isLetter(chars[i])) {
+            i++;
+        }
+        if (i == threadStart || i >= length || chars[i] != ']') {
+            return clear();
+        }
+        thread.set(threadStart, i++);
+
+        // Message follows ": "
+        if (i + 2 > length || chars[i] != ':' || chars[i + 1] != ' ') {
+            return clear();
+        }
+        message.set(i + 2, length);
+        output.set(levelStart, length);
+        return true;
+    }
+
+    private boolean clear() {
+        timestamp.set(0, 0);
+        output.set(0, 0);
+        level.set(0, 0);
+        thread.set(0, 0);
+        message.set(0, 0);
+        return false;
+    }
+
+    private static boolean isTimestampChar(char c) {
+        return (c >= '0' && c <= '9') || c == ':' || c == ' ' || c == '-';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * A view of one field of the current line.
+     */
+    public final class Field implements CharSequence {
+
+        private int start = 0;
+        private int end = 0;
+
+        private void set(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Compare without creating a String.
+         *
+         * @param s the expected content
+         * @return true if the field's content equals s
+         */
+        public boolean contentEquals(String s) {
+            if (s.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (chars[start + i] != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            return new String(chars, start + s, e - s);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads server output line by line into a reusable LogLine.
+ * <p>
+ * Unlike BufferedReader.readLine(), no String is created per line.
+ * Reads block until the server writes more output, and each line
+ * is returned as soon as its terminator arrives.
+ *
+ * @see LogLine
+ */
+public class LogLineReader {
+
+    private final Reader reader;
+    private char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    private int scanned = 0;
+
+    public LogLineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read the next line, blocking until it is complete.
+     *
+     * @param line the line to fill
+     * @return false once the output has ended
+     * @throws IOException
+     */
+    public boolean readLine(LogLine line) throws IOException {
+        while (true) {
+            for (int i = Math.max(position, scanned); i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    int end = (i > position && buffer[i - 1] == '\r') ? i - 1 : i;
+                    line.set(buffer, position, end - position);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            scanned = limit;
+
+            // Keep the partial line, making room for more input.
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                scanned -= position;
+                position = 0;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            int n = reader.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                if (limit > position) {
+                    // Final line without terminator.
+                    line.set(buffer, position, limit - position);
+                    position = limit;
+                    return true;
+                }
+                return false;
+            }
+            limit += n;
+        }
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
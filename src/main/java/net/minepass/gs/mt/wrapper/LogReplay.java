@@ -0,0 +1,214 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.events.ModListed;
+import net.minepass.gs.mt.wrapper.events.PlayerJoined;
+import net.minepass.gs.mt.wrapper.events.PlayerLeft;
+import net.minepass.gs.mt.wrapper.events.ServerEvent;
+import net.minepass.gs.mt.wrapper.events.ServerStopped;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LogReplay feeds a recorded server log (e.g. debug.txt) through the
+ * ServerManager, as if it were the output of a running server, and then
+ * reports the throughput, the events detected, and the resulting state.
+ * <p>
+ * Logs are replayed at maximum speed, or paced by their timestamps at the
+ * given speed (1 for the original timing).
+ *
+ * @see MP_MinetestWrapper#main(String[])
+ */
+public class LogReplay {
+
+    private static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final MP_MinetestWrapper wrapper;
+    private final File logFile;
+    private final double speed;
+
+    /**
+     * Mods of the last server to list them, and the players online when the
+     * last server stopped, since the server state is reset when a server stops.
+     */
+    private TreeSet<String> mods = new TreeSet<>();
+    private boolean serverStopped = false;
+    private final HashSet<String> online = new HashSet<>();
+    private int onlineAtStop = 0;
+
+    public LogReplay(MP_MinetestWrapper wrapper, File logFile, double speed) {
+        this.wrapper = wrapper;
+        this.logFile = logFile;
+        this.speed = speed;
+    }
+
+    public void run() throws IOException {
+        InputStream input;
+        if (speed > 0) {
+            input = startPacedInput();
+        } else {
+            input = new FileInputStream(logFile);
+        }
+
+        wrapper.getEventBus().subscribe("replay", this::recordEvents,
+                ModListed.class, PlayerJoined.class, PlayerLeft.class, ServerStopped.class);
+
+        long start = System.nanoTime();
+        try {
+            wrapper.getServerManager().setServerOutput(input);
+            wrapper.getServerManager().finish();
+            wrapper.getServerManager().run();
+            wrapper.getEventBus().awaitIdle(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // Report what was processed.
+        } finally {
+            MP_MinetestWrapper.closeQuietly(input);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        report(elapsed);
+        wrapper.getEventBus().shutdown();
+    }
+
+    private void recordEvents(List<ServerEvent> events) {
+        for (ServerEvent e : events) {
+            if (e instanceof ModListed) {
+                if (serverStopped) {
+                    mods = new TreeSet<>();
+                    serverStopped = false;
+                }
+                mods.add(((ModListed) e).name);
+            } else if (e instanceof PlayerJoined) {
+                online.add(((PlayerJoined) e).name);
+            } else if (e instanceof PlayerLeft) {
+                online.remove(((PlayerLeft) e).name);
+            } else if (e instanceof ServerStopped) {
+                serverStopped = true;
+                onlineAtStop = online.size();
+                online.clear();
+            }
+        }
+    }
+
+    /**
+     * Copy the log to a pipe on a separate thread, sleeping between lines
+     * according to their timestamps.
+     */
+    private InputStream startPacedInput() throws IOException {
+        PipedInputStream input = new PipedInputStream(65536);
+        final OutputStream output = new PipedOutputStream(input);
+
+        Thread feeder = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile)));
+                 Writer writer = new OutputStreamWriter(output)) {
+                long firstTimestamp = -1;
+                long firstNanos = System.nanoTime();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    long timestamp = getTimestamp(line);
+                    if (timestamp >= 0) {
+                        if (firstTimestamp < 0) {
+                            firstTimestamp = timestamp;
+                        }
+                        long due = firstNanos + (long) ((timestamp - firstTimestamp) * 1e9 / speed);
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            writer.flush();
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                    }
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } catch (IOException | InterruptedException e) {
+                // Replay ends early.
+            }
+        }, "MPReplay");
+        feeder.setDaemon(true);
+        feeder.start();
+
+        return input;
+    }
+
+    /**
+     * @return the timestamp of a log line in seconds, or -1 if it has none
+     */
+    private static long getTimestamp(String line) {
+        if (line.length() < 19) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.parse(line.substring(0, 19), timestampFormat).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private void report(long elapsed) {
+        Metrics metrics = wrapper.getMetrics();
+        long lines = metrics.counter("minepass_log_lines_total", "Lines of server output read.").get();
+        double seconds = elapsed / 1e9;
+
+        Map<String, Long> events = new TreeMap<>();
+        for (Metrics.Metric m : metrics.getMetrics()) {
+            if (m.name.equals("minepass_events_published_total")) {
+                events.put(m.labelValue, m.getCounter().get());
+            }
+        }
+
+        CommonState state = wrapper.getState();
+        System.out.println("Replay complete: ".concat(logFile.getPath()));
+        System.out.println(String.format("+ Lines: %d in %.3f s (%.0f lines/s)", lines, seconds, lines / seconds));
+        for (Map.Entry<String, Long> e : events.entrySet()) {
+            System.out.println(String.format("+ Event %s: %d", e.getKey(), e.getValue()));
+        }
+        System.out.println(String.format("+ Minetest version: %s", state.minetestVersion));
+        System.out.println(String.format("+ Mods: %s", mods));
+        System.out.println(String.format("+ Players online at end: %d", onlineAtStop));
+        System.out.println(String.format("+ Known players: %d", wrapper.getPlayerSessions().size()));
+    }
+}
@@ -31,15 +31,34 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 import net.minepass.api.gameserver.MPAsciiArt;
 import net.minepass.api.gameserver.MPConfigException;
 import net.minepass.api.gameserver.MPStartupException;
 import net.minepass.api.gameserver.embed.solidtx.TxLog;
 import net.minepass.api.gameserver.embed.solidtx.TxStack;
+import net.minepass.gs.mt.wrapper.events.EventBus;
+import net.minepass.gs.mt.wrapper.events.MinePassStarted;
+import net.minepass.gs.mt.wrapper.events.ModListed;
+import net.minepass.gs.mt.wrapper.events.PlayerJoined;
+import net.minepass.gs.mt.wrapper.events.PlayerLeft;
+import net.minepass.gs.mt.wrapper.events.ServerStarted;
+import net.minepass.gs.mt.wrapper.events.ServerStopped;
+import net.minepass.gs.mt.wrapper.events.ServerVersionDetected;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+import net.minepass.gs.mt.wrapper.metrics.MetricsMBean;
+import net.minepass.gs.mt.wrapper.metrics.PrometheusExporter;
 
 /**
  * MinePass wrapper for Minetest.
@@ -64,9 +83,12 @@ public class MP_MinetestWrapper {
     // ------------------------------------------------------------------------------------------------------------- //
 
     public static void main(String[] args) {
-        String worldPath = null;
+        ArrayList<String> worldPaths = new ArrayList<>();
         String serverBinary = getDefaultServerBinary();
         boolean createWorld = false;
+        boolean supervise = false;
+        String replayFile = null;
+        double replaySpeed = 0;
 
         ArrayList<String> serverArgs = new ArrayList<>();
 
@@ -79,34 +101,130 @@ public class MP_MinetestWrapper {
                     break;
                 case "--world":
                     if (i + 1 < args.length)
-                        worldPath = args[++i];
+                        worldPaths.add(args[++i]);
+                    break;
+                case "--worlds":
+                    if (i + 1 < args.length)
+                        worldPaths.addAll(WorldSupervisor.readWorldList(new File(args[++i])));
                     break;
                 case "--ignore-missing-world":
                     createWorld = true;
                     break;
+                case "--supervise":
+                    supervise = true;
+                    break;
+                case "--replay":
+                    if (i + 1 < args.length)
+                        replayFile = args[++i];
+                    break;
+                case "--replay-speed":
+                    if (i + 1 < args.length)
+                        replaySpeed = Double.parseDouble(args[++i]);
+                    break;
                 default:
                     serverArgs.add(a);
             }
         }
 
+        String worldPath = worldPaths.isEmpty() ? null : worldPaths.get(0);
+        String[] serverArgsArray = serverArgs.toArray(new String[serverArgs.size()]);
+
+        if (replayFile != null) {
+            // Replay a recorded server log, without a server or MinePass.
+            new MP_MinetestWrapper(worldPath).launchReplay(new File(replayFile), replaySpeed);
+            return;
+        }
+
+        if (worldPaths.size() > 1) {
+            // Run all worlds in this JVM.
+            new WorldSupervisor(serverBinary, worldPaths, createWorld, supervise).run(serverArgsArray);
+            return;
+        }
+
         MP_MinetestWrapper wrapper = new MP_MinetestWrapper(serverBinary, worldPath, createWorld);
+        wrapper.setRestartServer(supervise);
+        wrapper.runServer(serverArgsArray);
+    }
+
+    /**
+     * Run MinePass and the server until the server exits.
+     * <p>
+     * If restarts are enabled, a crashed server is restarted (subject to the
+     * RestartPolicy) while MinePass keeps running.
+     *
+     * @param serverArgs additional server arguments
+     */
+    public void runServer(String[] serverArgs) {
+        this.startupTimer = new StartupTimer(metrics);
+
+        // Launch server and console managers, ready for the server output.
+        launchManagers();
+
+        // Launch minetest server, which loads while MinePass initializes.
+        // The mod handshake waits for MinePass to be ready, and the mod
+        // waits for the handshake while the starting file exists.
+        File startingFile = new File(getState().minetestWorldPath, MinePassMT.startingFilename);
+        try {
+            startingFile.createNewFile();
+            startingFile.deleteOnExit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Process process = launchServer(serverArgs);
+        long launched = System.currentTimeMillis();
+        startupTimer.record("server_launched");
 
         // Initialize MinePass, and perform initial sync (if necessary).
-        if (wrapper.initMinePass()) {
-            // Launch server and console managers.
-            wrapper.launchManagers();
+        boolean ready = initMinePass();
+        startingFile.delete();
+        minepassReady.countDown();
+        if (!ready) {
+            process.destroy();
+        } else {
+            startupTimer.record("minepass_ready");
+            startMetrics();
+        }
 
-            // Delay to make the wrapper initial log output more visible, and give the managers time to initialize.
+        RestartPolicy restartPolicy = new RestartPolicy(config);
+        while (true) {
+            int exitCode;
             try {
-                Thread.sleep(1500);
+                exitCode = process.waitFor();
             } catch (InterruptedException e) {
-                return;
+                break;
             }
 
-            // Launch minetest server.
-            wrapper.launchServer(serverArgs.toArray(new String[serverArgs.size()]));
-            System.out.println("Minetest server exited.");
-            wrapper.getServerManager().stopMinePass();
+            if (!ready || !restartServer || exitCode == 0) {
+                break;
+            }
+
+            long delay = restartPolicy.onCrash(System.currentTimeMillis() - launched);
+            if (delay < 0) {
+                logger.error(String.format(
+                        "Minetest server is crash looping (%d crashes), not restarting.",
+                        restartPolicy.getRecentCrashes()
+                ), this);
+                break;
+            }
+            logger.warn(String.format(
+                    "Minetest server exited (code %d), restarting in %d ms.", exitCode, delay
+            ), this);
+            serverRestarts.increment();
+
+            process = relaunchServer(serverArgs, restartPolicy, delay);
+            if (process == null) {
+                break;
+            }
+            launched = System.currentTimeMillis();
+        }
+
+        System.out.println("Minetest server exited.");
+        getServerManager().finish();
+        getServerManager().stopMinePass();
+        getEventBus().shutdown();
+        stopMetrics();
+        if (!supervised) {
+            executors.shutdown();
         }
     }
 
@@ -129,7 +247,20 @@ public class MP_MinetestWrapper {
     private MinePassMT minepass;
     private ConsoleManager consoleManager;
     private ServerManager serverManager;
+    private WrapperExecutors executors;
+    private final CountDownLatch minepassReady = new CountDownLatch(1);
+    private StartupTimer startupTimer;
+    private boolean supervised = false;
+    private boolean restartServer = false;
+    private long syncEpoch = 0;
+    private long syncSlot = 0;
+    private EventBus eventBus;
+    private PrometheusExporter metricsExporter;
     private final CommonState state = new CommonState();
+    private final PlayerSessionRegistry playerSessions;
+    private final Metrics metrics = new Metrics();
+    private final Counter serverRestarts = metrics.counter(
+            "minepass_server_restarts_total", "Times the server was restarted after crashing.");
 
     public MP_MinetestWrapper(String minetestBinary, String worldPath, boolean createWorld) {
         this.wrapperVersion = properties.getProperty("version");
@@ -164,6 +295,33 @@ public class MP_MinetestWrapper {
 
         getState().minetestBinary = minetestBinary;
         getState().minetestWorldPath = worldPath;
+        this.playerSessions = new PlayerSessionRegistry(config, metrics);
+
+        registerStateMetrics();
+    }
+
+    /**
+     * Create an offline wrapper, for replaying recorded server logs.
+     * <p>
+     * There is no MinePass core, so no data is synced, no commands are sent and
+     * no players have a pass, but server output is processed exactly as for a
+     * live server (without echoing it to the console).
+     *
+     * @param worldPath world to read the wrapper configuration from, or null for defaults
+     * @see LogReplay
+     */
+    private MP_MinetestWrapper(String worldPath) {
+        minepassReady.countDown();
+        this.wrapperVersion = properties.getProperty("version");
+        TxLog.log(TxLog.Level.INFO, String.format("MinePass Wrapper (%s) for Minetest - Log Replay", wrapperVersion));
+
+        loadConfig(worldPath);
+        config.setProperty("console_levels", "none");
+
+        getState().minetestWorldPath = worldPath;
+        this.playerSessions = new PlayerSessionRegistry(config, metrics);
+
+        registerStateMetrics();
     }
 
     /**
@@ -198,7 +356,7 @@ public class MP_MinetestWrapper {
              *   https://github.com/org-binbab/solid-tx
              *
              */
-            this.minepass = new MinePassMT(mtc);
+            this.minepass = new MinePassMT(mtc, metrics);
             this.logger = minepass.log;
             minepass.setContext(this);
 
@@ -224,35 +382,128 @@ public class MP_MinetestWrapper {
     /**
      * Launch the primary wrapper managers in secondary threads.
      *
+     * Also creates the executors for background work (unless shared by a
+     * supervisor), so that no manager needs to block its own thread while
+     * waiting.
+     *
+     * The event bus is created here too, with the handlers reacting to the
+     * events recognised in the server output.
+     *
      * @see ConsoleManager
      * @see ServerManager
      */
     private void launchManagers() {
-        if (minepass == null) {
-            return;
-        }
+        startEventHandling();
 
         this.consoleManager = new ConsoleManager(this);
-        Thread consoleThread = new Thread(consoleManager, "MPConsole");
-        consoleThread.setDaemon(true);
-        consoleThread.start();
+        if (!supervised) {
+            Thread consoleThread = new Thread(consoleManager, "MPConsole");
+            consoleThread.setDaemon(true);
+            consoleThread.start();
+        }
 
         this.serverManager = new ServerManager(this);
-        Thread controlThread = new Thread(serverManager, "MinePass");
+        Thread controlThread = new Thread(serverManager,
+                supervised ? "MinePass-".concat(new File(getState().minetestWorldPath).getName()) : "MinePass");
         controlThread.setDaemon(true);
         controlThread.start();
     }
 
+    private void startEventHandling() {
+        if (executors == null) {
+            this.executors = new WrapperExecutors(1);
+        }
+
+        this.eventBus = new EventBus(metrics, executors.getEvents());
+        eventBus.subscribe("lifecycle", new ServerLifecycleHandler(this),
+                ServerVersionDetected.class, ModListed.class, ServerStarted.class);
+        eventBus.subscribe("sessions", new PlayerSessionHandler(this),
+                PlayerJoined.class, PlayerLeft.class, MinePassStarted.class, ServerStopped.class);
+    }
+
     /**
-     * Launch the vanilla server with the provided args.
+     * Run this wrapper under a WorldSupervisor, sharing its executors.
+     * The supervisor also reads the console on behalf of all worlds.
+     *
+     * @param executors shared executors
+     * @param syncEpoch start of the supervisor's sync schedule (System.currentTimeMillis)
+     * @param syncSlot  this world's offset within each sync interval (ms)
+     */
+    void setSupervised(WrapperExecutors executors, long syncEpoch, long syncSlot) {
+        this.supervised = true;
+        this.executors = executors;
+        this.syncEpoch = syncEpoch;
+        this.syncSlot = syncSlot;
+    }
+
+    /**
+     * @param restartServer true to restart the server if it crashes
+     */
+    public void setRestartServer(boolean restartServer) {
+        this.restartServer = restartServer;
+    }
+
+    /**
+     * Replay a recorded server log through the server manager, and report the results.
+     *
+     * @param logFile the recorded log (e.g. debug.txt)
+     * @param speed   replay speed relative to the log timestamps, or 0 for maximum speed
+     */
+    private void launchReplay(File logFile, double speed) {
+        startEventHandling();
+        this.serverManager = new ServerManager(this);
+
+        try {
+            new LogReplay(this, logFile, speed).run();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to replay server log", e);
+        }
+    }
+
+    /**
+     * Relaunch the vanilla server after a crash. A failed launch is counted
+     * as another crash, so the restart policy decides whether to try again.
      *
      * @param args
+     * @param restartPolicy
+     * @param delay         milliseconds to wait before launching
+     * @return the server process, or null if the server will not be restarted
      */
-    private void launchServer(String[] args) {
-        if (minepass == null) {
-            return;
+    private Process relaunchServer(String[] args, RestartPolicy restartPolicy, long delay) {
+        while (true) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return null;
+            }
+
+            this.startupTimer = new StartupTimer(metrics);
+            try {
+                Process process = launchServer(args);
+                startupTimer.record("server_launched");
+                return process;
+            } catch (RuntimeException e) {
+                logger.error("Failed to relaunch Minetest server: ".concat(String.valueOf(e.getCause())), this);
+            }
+
+            delay = restartPolicy.onCrash(0);
+            if (delay < 0) {
+                logger.error(String.format(
+                        "Minetest server is crash looping (%d crashes), not restarting.",
+                        restartPolicy.getRecentCrashes()
+                ), this);
+                return null;
+            }
         }
+    }
 
+    /**
+     * Launch the vanilla server with the provided args.
+     *
+     * @param args
+     * @return the server process
+     */
+    private Process launchServer(String[] args) {
         ArrayList<String> argList = new ArrayList<>();
         argList.add(getState().minetestBinary);
         argList.add("--server");
@@ -266,11 +517,9 @@ public class MP_MinetestWrapper {
             pb.redirectErrorStream(true);
             Process p = pb.start();
             getServerManager().setServerProcess(p);
-            p.waitFor();
+            return p;
         } catch (IOException e) {
             throw new RuntimeException("Failed to invoke server startup", e);
-        } catch (InterruptedException e) {
-            // Ignore.
         }
     }
 
@@ -278,6 +527,36 @@ public class MP_MinetestWrapper {
         return logger;
     }
 
+    /**
+     * Wait until MinePass has been initialized (or failed to).
+     *
+     * @return true if MinePass is available
+     */
+    public boolean awaitMinePass() {
+        try {
+            minepassReady.await();
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return minepass != null;
+    }
+
+    /**
+     * @return the startup phase timer, or null if not running a server
+     */
+    public StartupTimer getStartupTimer() {
+        return startupTimer;
+    }
+
+    /**
+     * @return the index of MinePass players, which is empty while MinePass is
+     * unavailable (initializing, failed to initialize, or replaying a log)
+     */
+    public PlayerIndex getPlayerIndex() {
+        MinePassMT minepass = this.minepass;
+        return minepass == null ? PlayerIndex.EMPTY : minepass.getPlayerIndex();
+    }
+
     public MinePassMT getMinepass() {
         return minepass;
     }
@@ -290,16 +569,95 @@ public class MP_MinetestWrapper {
         return serverManager;
     }
 
+    /**
+     * @return the delay before starting MinePass sync (ms), so that it keeps to
+     * its slot in the supervisor's sync schedule, or 0 if not supervised
+     */
+    public long getSyncDelay() {
+        if (!supervised) {
+            return 0;
+        }
+        long interval = TimeUnit.SECONDS.toMillis(ServerManager.SYNC_INTERVAL_S);
+        long elapsed = (System.currentTimeMillis() - syncEpoch) % interval;
+        return (syncSlot - elapsed + interval) % interval;
+    }
+
+    public WrapperExecutors getExecutors() {
+        return executors;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return executors.getScheduler();
+    }
+
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
     public CommonState getState() {
         return state;
     }
 
+    public PlayerSessionRegistry getPlayerSessions() {
+        return playerSessions;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
     public String getWrapperVersion() {
         return wrapperVersion;
     }
 
     public boolean getDebug() {
-        return debug;
+        return debug != null && debug;
+    }
+
+    // Metrics
+    // ------------------------------------------------------------------------------------------------------------- //
+
+    private void registerStateMetrics() {
+        metrics.gauge("minepass_current_players", "Players currently online.",
+                () -> getState().currentPlayers.get().size());
+        metrics.gauge("minepass_pending_logins", "Players within the login grace period.",
+                () -> getState().pendingLogins.size());
+        metrics.gauge("minepass_mod_command_backlog", "Commands deferred by the mod to later server steps.",
+                () -> getState().modCommandBacklog);
+        metrics.gauge("minepass_mod_command_budget_used_seconds", "Time the mod spent on commands in its last step.",
+                () -> getState().modCommandBudgetUsed / 1e6);
+        metrics.gauge("minepass_server_step_seconds", "Average server step time, as last reported by the mod.",
+                "stat", "average", () -> getState().modStepAverage / 1e6);
+        metrics.gauge("minepass_server_step_seconds", "Longest server step time, as last reported by the mod.",
+                "stat", "max", () -> getState().modStepMax / 1e6);
+    }
+
+    /**
+     * Expose metrics via JMX, and via HTTP if a metrics_port is configured.
+     */
+    private void startMetrics() {
+        try {
+            MetricsMBean.register(metrics, new File(getState().minetestWorldPath).getName());
+        } catch (JMException e) {
+            logger.warn("Failed to register metrics MBean: ".concat(String.valueOf(e.getMessage())), this);
+        }
+
+        String port = config.getProperty("metrics_port", "").trim();
+        if (!port.isEmpty()) {
+            try {
+                metricsExporter = new PrometheusExporter(metrics, Integer.parseInt(port));
+                metricsExporter.start();
+                logger.info("Metrics available at http://127.0.0.1:" + port + "/metrics", this);
+            } catch (IOException | NumberFormatException e) {
+                logger.warn("Failed to start metrics endpoint: ".concat(String.valueOf(e.getMessage())), this);
+            }
+        }
+    }
+
+    public void stopMetrics() {
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
     }
 
     // Configuration
@@ -308,10 +666,13 @@ public class MP_MinetestWrapper {
     public Properties config;
 
     private void loadConfig(String worldPath) {
-        File configFile = new File(worldPath + File.separator + configFileName);
+        File configFile = worldPath == null ? null : new File(worldPath + File.separator + configFileName);
         InputStream configFileInput;
 
         try {
+            if (configFile == null) {
+                throw new FileNotFoundException();
+            }
             configFileInput = new FileInputStream(configFile);
         } catch (FileNotFoundException e) {
             // Use default config file from jar resource.
@@ -328,7 +689,7 @@ public class MP_MinetestWrapper {
         }
 
         // Save default config (if needed).
-        if (!configFile.exists()) {
+        if (configFile != null && !configFile.exists()) {
             try (OutputStream configFileOutput = new FileOutputStream(configFile)) {
                 config.store(configFileOutput, "MinePass Configuration");
             } catch (IOException e) {
@@ -384,4 +745,27 @@ public class MP_MinetestWrapper {
             // Ignore.
         }
     }
+
+    /**
+     * Replace a file's content atomically, via a synced temporary file
+     * in the same directory.
+     *
+     * @param file    the file to replace
+     * @param content the new content
+     * @throws IOException
+     */
+    static public void writeFileAtomically(File file, byte[] content) throws IOException {
+        File tempFile = new File(file.getPath().concat(".tmp"));
+        try (FileOutputStream out = new FileOutputStream(tempFile, false)) {
+            out.write(content);
+            out.getChannel().force(false);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
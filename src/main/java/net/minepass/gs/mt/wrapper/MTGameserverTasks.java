@@ -24,55 +24,179 @@
 
 package net.minepass.gs.mt.wrapper;
 
-import java.io.FileWriter;
+import net.minepass.api.gameserver.MPWorldServer;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Wrapper implementation of MinePass GameserverTasks.
  * Ensuring passes remain valid, etc.
  * <p>
+ * Each task runs at its own interval on the TaskScheduler (one at a time),
+ * and can also be triggered by events:
+ * <ul>
+ *     <li>pass_check - every second (passes expire with time), and when a player
+ *     joins, or the server data changes</li>
+ *     <li>auth_update - when a sync replaces the server data, or the server
+ *     (re)starts</li>
+ *     <li>command_flush - when a command is queued</li>
+ * </ul>
  * Data can be shared with other threads via the common
  * state, which also uses threadsafe data structures.
  *
  * @see net.minepass.gs.GameserverTasks
  * @see CommonState
  */
-public class MTGameserverTasks extends net.minepass.gs.GameserverTasks implements Runnable {
+public class MTGameserverTasks extends net.minepass.gs.GameserverTasks {
 
     private MP_MinetestWrapper wrapper;
+    private final Counter passChecks;
+
+    private TaskScheduler scheduler;
+    private TaskScheduler.Task passCheck;
+    private TaskScheduler.Task commandFlush;
+    private TaskScheduler.Task authUpdate;
+
+    /**
+     * Server data the local auth was last updated from.
+     */
+    private MPWorldServer authServer;
+
+    /**
+     * For mods that accept auth changes, the auth files are only rewritten
+     * (and reloaded in full) periodically, provided changes were sent since.
+     */
+    private final long authSnapshotInterval;
+    private long lastAuthSnapshot;
+    private boolean authSnapshotTaken = false;
+    private boolean authChangesSent = false;
+    private volatile boolean authReloadRequested = false;
 
     public MTGameserverTasks(MP_MinetestWrapper wrapper) {
         super(wrapper.getMinepass());
         this.wrapper = wrapper;
+        this.passChecks = wrapper.getMetrics().counter(
+                "minepass_pass_checks_total", "Player pass checks made by the core tasks.");
+        this.authSnapshotInterval = TimeUnit.SECONDS.toNanos(
+                Long.parseLong(wrapper.config.getProperty("auth_snapshot_interval_s", "600").trim()));
+    }
+
+    /**
+     * Start running the tasks.
+     */
+    public void start() {
+        this.scheduler = new TaskScheduler(wrapper.getScheduler(), wrapper.getMetrics());
+        this.passCheck = scheduler.schedule("pass_check",
+                Long.parseLong(wrapper.config.getProperty("player_check_interval_s", "1").trim()),
+                TimeUnit.SECONDS, this::runTasks);
+        this.commandFlush = scheduler.schedule("command_flush",
+                Long.parseLong(wrapper.config.getProperty("command_flush_interval_ms", "5000").trim()),
+                TimeUnit.MILLISECONDS, this::sendCommands);
+        this.authUpdate = scheduler.schedule("auth_update",
+                Long.parseLong(wrapper.config.getProperty("auth_update_interval_ms", "1000").trim()),
+                TimeUnit.MILLISECONDS, this::updateAuthOnSync);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Check passes promptly, following a change in the current players.
+     */
+    public void playersChanged() {
+        if (passCheck != null) {
+            passCheck.trigger();
+        }
+    }
+
+    /**
+     * Rewrite the local auth and have the server reload it in full, even if unchanged
+     * (e.g. once a server has started).
+     */
+    public void reloadLocalAuth() {
+        authReloadRequested = true;
+        if (authUpdate != null) {
+            authUpdate.trigger();
+        }
+    }
+
+    /**
+     * Deliver commands promptly, following a command being queued.
+     */
+    public void commandsQueued() {
+        if (commandFlush != null) {
+            commandFlush.trigger();
+        }
     }
 
     @Override
     protected Map<UUID, String> getCurrentPlayers() {
-        HashMap<UUID, String> currentPlayers = new HashMap<>();
-        for (Map.Entry<String, UUID> entry : wrapper.getState().currentPlayers.entrySet()) {
-            currentPlayers.put(entry.getValue(), entry.getKey());
-        }
-        return currentPlayers;
+        return wrapper.getState().currentPlayers.get().getPlayers();
     }
 
     @Override
     protected void updateAndReloadLocalAuth() {
-        wrapper.getMinepass().updateLocalAuth();
-        wrapper.getConsoleManager().sendCommand("/auth_reload");
-        wrapper.getLogger().info("Local auth updated", this);
+        updateLocalAuth(false);
+    }
+
+    /**
+     * Update the local auth, sending only the changes to mods that accept them.
+     *
+     * @param reload true to rewrite and reload the auth files in full
+     */
+    private void updateLocalAuth(boolean reload) {
+        MinePassMT minepass = wrapper.getMinepass();
+        boolean sendChanges = wrapper.getState().modAuthChanges;
+        long now = System.nanoTime();
+
+        if (sendChanges && !reload && authSnapshotTaken && now - lastAuthSnapshot < authSnapshotInterval) {
+            List<String> changes = minepass.getAuthChanges(false);
+            for (String command : changes) {
+                wrapper.getConsoleManager().sendCommand(command);
+            }
+            if (!changes.isEmpty()) {
+                authChangesSent = true;
+                wrapper.getLogger().info(String.format("Local auth updated (%d changes)", changes.size()), this);
+            } else {
+                wrapper.getLogger().debug("Local auth unchanged", this);
+            }
+            return;
+        }
+
+        // The mod's auth may differ from the files once changes have been sent.
+        if (minepass.updateLocalAuth() || reload || authChangesSent) {
+            wrapper.getConsoleManager().sendCommand("/auth_reload");
+            wrapper.getLogger().info("Local auth updated", this);
+        } else {
+            wrapper.getLogger().debug("Local auth unchanged", this);
+        }
+        if (sendChanges) {
+            minepass.getAuthChanges(true);
+            lastAuthSnapshot = now;
+            authSnapshotTaken = true;
+            authChangesSent = false;
+        }
     }
 
     @Override
     protected void kickPlayer(UUID playerId, String message) {
-        wrapper.getServerManager().kickPlayer(wrapper.getState().playerAuthNames.get(playerId), message);
+        String playerName = wrapper.getPlayerSessions().getName(playerId);
+        if (playerName != null) {
+            wrapper.getServerManager().kickPlayer(playerName, message);
+        }
     }
 
     @Override
     protected void warnPlayer(UUID playerId, String message) {
-        String playerName = wrapper.getState().playerAuthNames.get(playerId);
+        String playerName = wrapper.getPlayerSessions().getName(playerId);
         if (playerName != null) {
             wrapper.getServerManager().tellPlayer(playerName, message);
         }
@@ -87,34 +211,61 @@ public class MTGameserverTasks extends net.minepass.gs.GameserverTasks implement
     }
 
     protected void sendCommands() {
-        if (wrapper.getMinepass().commandQueue.size() > 0 && !wrapper.getMinepass().commandFile.exists()) {
-            try {
-                FileWriter fw = new FileWriter(wrapper.getMinepass().commandFile, false);
-                fw.write(wrapper.getMinepass().commandQueue.peek());
-                fw.flush();
-                fw.close();
-                wrapper.getMinepass().commandQueue.remove();
-            } catch (IOException e) {
-                e.printStackTrace();
+        CommandJournal journal = wrapper.getMinepass().commandJournal;
+        try {
+            journal.append(wrapper.getMinepass().commandQueue);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // Collect progress reported by the mod.
+        CommandJournal.Acknowledgement ack = journal.readAcknowledgement();
+        try {
+            if (journal.compact(ack.sequence)) {
+                wrapper.getLogger().debug("Command journal compacted", this);
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        wrapper.getState().modCommandSequence = ack.sequence;
+        wrapper.getState().modCommandBudgetUsed = ack.budgetUsed;
+        wrapper.getState().modCommandBacklog = ack.backlog;
+        if (ack.backlog > 0) {
+            wrapper.getLogger().debug(String.format(
+                    "Mod command backlog: %d (%d us used in last step)", ack.backlog, ack.budgetUsed
+            ), this);
+        }
+    }
+
+    /**
+     * Update the local auth once a sync has replaced the server data, or a reload was requested.
+     * The sync thread gives no notice of completion, so this checks cheaply by identity.
+     */
+    protected void updateAuthOnSync() {
+        MPWorldServer server = wrapper.getMinepass().getServer();
+        boolean reload = authReloadRequested;
+        authReloadRequested = false;
+        if (server != authServer) {
+            authServer = server;
+            updateLocalAuth(reload);
+            passCheck.trigger();
+        } else if (reload) {
+            updateLocalAuth(true);
+        } else if (authChangesSent && System.nanoTime() - lastAuthSnapshot >= authSnapshotInterval) {
+            updateLocalAuth(false);
         }
     }
 
+    /**
+     * Run the core tasks for all current players.
+     * <p>
+     * Every run checks all players, even if neither the players nor the server
+     * data changed since the last run, since passes also expire with time (and
+     * the core does not expose pass expiry to schedule checks from).
+     */
     @Override
     public void runTasks() {
+        passChecks.add(wrapper.getState().currentPlayers.get().size());
         super.runTasks();
-        sendCommands();
-    }
-
-    public void run() {
-        while (true) {
-            try {
-                Thread.sleep(1000);  // 1 second
-            } catch (InterruptedException e) {
-                return;
-            }
-
-            runTasks();
-        }
     }
 }
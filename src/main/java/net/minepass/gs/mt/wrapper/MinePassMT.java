@@ -7,43 +7,81 @@ import net.minepass.api.gameserver.MPWorldServer;
 import net.minepass.api.gameserver.MinePass;
 import net.minepass.api.gameserver.embed.solidtx.core.storage.StorageManager;
 import net.minepass.api.gameserver.embed.solidtx.disk.FileStorageContainer;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Histogram;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MinePassMT extends MinePass {
 
     static public final String authFilename = "auth.txt";
     static public final String authShadowFilename = "auth.shadow.txt";
     static public final String authBackupFilename = "auth.import.txt";
-    static public final String commandFilename = "command.txt";
+    static public final String commandJournalFilename = "command.journal";
+    static public final String commandAckFilename = "command.ack";
+    static public final String startingFilename = "minepass.starting";
 
     static public ArrayList<String> allPrivileges = new ArrayList<>(Arrays.asList(
             "server", "shout", "fly", "password", "bring", "kick", "teleport", "ban", "noclip", "interact", "fast",
             "home", "privs", "give", "protection_bypass", "rollback", "settime", "basic_privs"
     ));
 
+    protected final AuthRenderer authRenderer = new AuthRenderer(allPrivileges);
+
     protected String worldPath;
 
     protected File authFile;
     protected File authShadowFile;
 
-    protected File commandFile;
+    /**
+     * State of the last written auth data, used to skip unchanged updates.
+     */
+    private byte[] authDigest;
+    private long authFileModified;
+    private long authFileLength;
+
+    /**
+     * Auth data as last delivered to a mod that accepts auth changes.
+     */
+    private final AuthDeltaTracker authDeltas = new AuthDeltaTracker(authRenderer);
+
+    private volatile PlayerIndex playerIndex;
+
+    private final Histogram authUpdateTime;
+    private final Counter authWrites;
+    private final Counter authUnchanged;
+    private final Counter authRendered;
+
+    protected CommandJournal commandJournal;
     protected Queue<String> commandQueue;
 
-    public MinePassMT(MTConfig config) throws MPConfigException, MPStartupException {
+    public MinePassMT(MTConfig config, Metrics metrics) throws MPConfigException, MPStartupException {
         super(config);
 
+        authUpdateTime = metrics.histogram("minepass_auth_update_duration", "Time to render and write local auth.");
+        authWrites = metrics.counter("minepass_auth_writes_total", "Local auth updates that rewrote the auth files.");
+        authUnchanged = metrics.counter("minepass_auth_unchanged_total", "Local auth updates skipped as unchanged.");
+        authRendered = metrics.counter("minepass_auth_rendered_total", "Players rendered again for auth changes.");
+        metrics.gauge("minepass_player_index_size", "Players in the name index.",
+                () -> getPlayerIndex().size());
+        metrics.gauge("minepass_player_index_build_seconds", "Time taken to build the current name index.",
+                () -> getPlayerIndex().getBuildTime() / 1e9);
+        metrics.gauge("minepass_command_queue_depth", "Commands waiting to be written to the journal.",
+                () -> commandQueue == null ? 0 : commandQueue.size());
+
         this.worldPath = variantConfig.get("worldpath");
         authFile = new File(worldPath.concat(File.separator).concat(authFilename));
         authShadowFile = new File(worldPath.concat(File.separator).concat(authShadowFilename));
@@ -71,34 +109,143 @@ public class MinePassMT extends MinePass {
             }
         }
 
-        // Update local auth.
+        // Update local auth (unless already current from a previous run).
+        loadLocalAuthState();
         updateLocalAuth();
 
-        // Initialize command file and queue.
-        commandFile = new File(worldPath.concat(File.separator).concat(commandFilename));
+        // Initialize command journal and queue.
+        try {
+            commandJournal = new CommandJournal(
+                    new File(worldPath.concat(File.separator).concat(commandJournalFilename)),
+                    new File(worldPath.concat(File.separator).concat(commandAckFilename))
+            );
+        } catch (IOException e) {
+            throw new MPStartupException("Failed to open command journal.", e);
+        }
         commandQueue = new ConcurrentLinkedQueue<>();
     }
 
-    public void updateLocalAuth() {
+    /**
+     * Render the auth data and write it to the shadow and live auth files.
+     * <p>
+     * Nothing is written if the rendered data matches the last write and the
+     * auth file has not been modified since (e.g. by the server itself).
+     * Files are replaced atomically, so the server never reads a partial file.
+     *
+     * @return true if the auth files were updated (and should be reloaded)
+     */
+    public boolean updateLocalAuth() {
+        long start = System.nanoTime();
+
+        // Server data has likely changed, refresh the player index along with auth.
+        rebuildPlayerIndex();
+
         try {
-            FileWriter fw = new FileWriter(authShadowFile, false);
-            fw.write(getServerAuthTxt(getServer()));
-            fw.flush();
-            fw.close();
-            Files.copy(Paths.get(authShadowFile.getPath()), Paths.get(authFile.getPath()), StandardCopyOption.REPLACE_EXISTING);
+            byte[] content = getServerAuthTxt(getServer()).getBytes(StandardCharsets.UTF_8);
+            byte[] digest = getDigest(content);
+
+            if (authDigest != null && MessageDigest.isEqual(digest, authDigest)
+                    && authFile.lastModified() == authFileModified
+                    && authFile.length() == authFileLength) {
+                authUnchanged.increment();
+                authUpdateTime.recordSince(start);
+                return false;
+            }
+
+            MP_MinetestWrapper.writeFileAtomically(authShadowFile, content);
+            MP_MinetestWrapper.writeFileAtomically(authFile, content);
+            authDigest = digest;
+            authFileModified = authFile.lastModified();
+            authFileLength = authFile.length();
+            authWrites.increment();
+            authUpdateTime.recordSince(start);
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        return false;
     }
 
-    public MPPlayer getPlayerByName(String playerName) {
-        for (MPPlayer player : getServer().players) {
-            if (player.name.equalsIgnoreCase(playerName)) {
-                return player;
+    /**
+     * Compare the auth data with that last delivered to the mod, and record it
+     * as delivered. The mod must have loaded the auth files beforehand.
+     * <p>
+     * Changed players are rendered as "@auth_set [auth line]" commands, and
+     * removed players as "@auth_del [name]".
+     *
+     * @param snapshot true if the auth files were just written and will be
+     *                 reloaded in full, so no changes need be sent
+     * @return commands to send to the mod
+     */
+    public List<String> getAuthChanges(boolean snapshot) {
+        ArrayList<String> commands = new ArrayList<>();
+        authRendered.add(authDeltas.update(getServer(), commands));
+        if (snapshot) {
+            commands.clear();
+        } else if (!commands.isEmpty()) {
+            // Server data has changed, refresh the player index along with auth.
+            rebuildPlayerIndex();
+        }
+        return commands;
+    }
+
+    /**
+     * Recover the last written auth state, provided the auth file still matches
+     * the shadow file from the previous run.
+     */
+    private void loadLocalAuthState() {
+        if (!authShadowFile.isFile() || authShadowFile.length() != authFile.length()) {
+            return;
+        }
+
+        try {
+            byte[] shadowDigest = getDigest(Files.readAllBytes(authShadowFile.toPath()));
+            if (MessageDigest.isEqual(shadowDigest, getDigest(Files.readAllBytes(authFile.toPath())))) {
+                authDigest = shadowDigest;
+                authFileModified = authFile.lastModified();
+                authFileLength = authFile.length();
             }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // Auth will be rewritten.
         }
+    }
+
+    private static byte[] getDigest(byte[] content) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(content);
+    }
+
+    public MPPlayer getPlayerByName(String playerName) {
+        return getPlayerIndex().getByName(playerName);
+    }
+
+    public MPPlayer getPlayerById(UUID playerId) {
+        return getPlayerIndex().getById(playerId);
+    }
+
+    /**
+     * Get the player index for the current server data.
+     * <p>
+     * The index is rebuilt if the server data has been replaced since it was
+     * built, and is otherwise refreshed on each local auth update.
+     *
+     * @return the current player index
+     */
+    public PlayerIndex getPlayerIndex() {
+        PlayerIndex index = playerIndex;
+        if (index == null || index.getServer() != getServer()) {
+            index = rebuildPlayerIndex();
+        }
+        return index;
+    }
 
-        return null;
+    private PlayerIndex rebuildPlayerIndex() {
+        PlayerIndex index = new PlayerIndex(getServer());
+        playerIndex = index;
+        log.debug(String.format(
+                "Player index rebuilt: %d players in %.3f ms", index.size(), index.getBuildTime() / 1e6
+        ), this);
+        return index;
     }
 
     @Override
@@ -110,47 +257,19 @@ public class MinePassMT extends MinePass {
     }
 
     protected String getServerAuthTxt(MPWorldServer server) {
-        StringBuffer s = new StringBuffer();
-        for (MPPlayer p : server.players) {
-            if (p.realm.equalsIgnoreCase("os")) {
-                s.append(getPlayerAuthTxt(p));
-            }
-        }
-        for (String name : server.bypass_players.keySet()) {
-            s.append(getPlayerAuthTxt(name, server.bypass_players.get(name)));
-        }
-        return s.toString();
+        return authRenderer.render(server);
     }
 
     protected String getPlayerAuthTxt(MPPlayer player) {
-        Pattern privPattern = Pattern.compile("mt:(?<name>.+)");
-        ArrayList<String> privileges = new ArrayList<>();
-
-        Matcher m;
-        for (String p : player.privileges) {
-            m = privPattern.matcher(p);
-            if (m.find()) {
-                if (m.group("name").equals("all")) {
-                    privileges.addAll(allPrivileges);
-                } else {
-                    privileges.add(m.group("name"));
-                }
-            }
-        }
-
-        if (privileges.size() > 0) {
-            return getPlayerAuthTxt(player.name, player.secret, privileges.toArray(new String[privileges.size()]));
-        } else {
-            return "";
-        }
-    }
-
-    protected String getPlayerAuthTxt(String name, String secret, String[] privileges) {
-        return String.join(":", name, secret, String.join(",", privileges)) + "\n";
+        StringBuilder sb = new StringBuilder();
+        authRenderer.appendPlayer(sb, player);
+        return sb.toString();
     }
 
     protected String getPlayerAuthTxt(String name, String identity) {
-        return String.join(":", name, identity) + "\n";
+        StringBuilder sb = new StringBuilder();
+        authRenderer.appendBypassPlayer(sb, name, identity);
+        return sb.toString();
     }
 
 }
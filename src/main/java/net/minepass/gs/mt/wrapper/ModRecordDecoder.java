@@ -0,0 +1,220 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.embed.solidtx.TxLog;
+import net.minepass.gs.mt.wrapper.events.ModListed;
+import net.minepass.gs.mt.wrapper.events.PlayerJoined;
+import net.minepass.gs.mt.wrapper.events.PlayerLeft;
+import net.minepass.gs.mt.wrapper.events.ServerStarted;
+import net.minepass.gs.mt.wrapper.events.ServerVersionDetected;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+
+import java.util.Arrays;
+
+/**
+ * Decodes the structured records written to the log by the MinePass mod.
+ * <p>
+ * Records are log messages of the form {@code MP|type|field|...}, and are
+ * decoded without the regex parsers. Once a mod announces itself with a
+ * hello record, the regex parsers stand down (until the server stops), so
+ * they only remain in use for older mods.
+ * <ul>
+ *     <li>{@code MP|hello|<mod version>|<capability>,...}</li>
+ *     <li>{@code MP|status|<minetest version>|<server status>}</li>
+ *     <li>{@code MP|mods|<name>,<name>,...}</li>
+ *     <li>{@code MP|loaded}</li>
+ *     <li>{@code MP|join|<name>|<ip>}</li>
+ *     <li>{@code MP|leave|<name>|<timed out 0/1>}</li>
+ *     <li>{@code MP|step|<average us>|<max us>|<steps>}</li>
+ * </ul>
+ * Unknown record types are ignored, so the mod may add new ones.
+ *
+ * @see CommonState#modRecords
+ */
+public class ModRecordDecoder {
+
+    static public final String PREFIX = "MP|";
+    static private final char SEPARATOR = '|';
+
+    private final MP_MinetestWrapper wrapper;
+    private final Counter records;
+    private final Counter unknown;
+
+    /**
+     * Offsets of the current record's fields.
+     */
+    private final int[] fieldStart = new int[8];
+    private final int[] fieldEnd = new int[8];
+    private int fieldCount;
+    private CharSequence record;
+
+    public ModRecordDecoder(MP_MinetestWrapper wrapper) {
+        this.wrapper = wrapper;
+        this.records = wrapper.getMetrics().counter(
+                "minepass_mod_records_total", "Structured records decoded from the mod.");
+        this.unknown = wrapper.getMetrics().counter(
+                "minepass_mod_records_unknown_total", "Structured records of an unknown type.");
+    }
+
+    /**
+     * @param message a log message
+     * @return true if the message is a record
+     */
+    public static boolean isRecord(CharSequence message) {
+        if (message.length() < PREFIX.length()) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (message.charAt(i) != PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a record and publish its events.
+     *
+     * @param message a log message, for which isRecord is true
+     */
+    public void decode(CharSequence message) {
+        split(message);
+        records.increment();
+
+        if (fieldEquals(0, "join")) {
+            if (fieldCount >= 2) {
+                wrapper.getEventBus().publish(new PlayerJoined(field(1), fieldCount >= 3 ? field(2) : null));
+            }
+        } else if (fieldEquals(0, "leave")) {
+            if (fieldCount >= 2) {
+                wrapper.getEventBus().publish(new PlayerLeft(field(1)));
+            }
+        } else if (fieldEquals(0, "step")) {
+            if (fieldCount >= 3) {
+                getState().modStepAverage = parseLong(1);
+                getState().modStepMax = parseLong(2);
+            }
+        } else if (fieldEquals(0, "hello")) {
+            getState().modRecords = true;
+            if (fieldCount >= 2 && !getState().minepassStarted) {
+                checkVersion(field(1));
+            }
+            if (fieldCount >= 3) {
+                // The mod keeps auth in memory, and accepts changes.
+                getState().modAuthChanges = Arrays.asList(field(2).split(",")).contains("auth");
+            }
+        } else if (getState().minepassStarted) {
+            // Startup records are only of interest until MinePass has started.
+            if (!fieldEquals(0, "status") && !fieldEquals(0, "mods") && !fieldEquals(0, "loaded")) {
+                unknown.increment();
+            }
+        } else if (fieldEquals(0, "status")) {
+            if (fieldCount >= 2) {
+                wrapper.getEventBus().publish(new ServerVersionDetected(field(1)));
+            }
+        } else if (fieldEquals(0, "mods")) {
+            if (fieldCount >= 2) {
+                int start = fieldStart[1];
+                int end = fieldEnd[1];
+                for (int i = start; i <= end; i++) {
+                    if (i == end || message.charAt(i) == ',') {
+                        if (i > start) {
+                            wrapper.getEventBus().publish(new ModListed(message.subSequence(start, i).toString()));
+                        }
+                        start = i + 1;
+                    }
+                }
+            }
+        } else if (fieldEquals(0, "loaded")) {
+            wrapper.getEventBus().publish(new ServerStarted());
+        } else {
+            unknown.increment();
+        }
+    }
+
+    private void checkVersion(String modVersion) {
+        if (EventParser.versionCompare(wrapper.getWrapperVersion(), modVersion) != 0) {
+            // The server may be ready before MinePass has provided a logger.
+            TxLog.log(TxLog.Level.ERROR, String.format(
+                    "Mod/Wrapper version mismatch: %s <> %s",
+                    wrapper.getWrapperVersion(),
+                    modVersion
+            ));
+            TxLog.log(TxLog.Level.ERROR, "Please update the minepass mod in your game folder.");
+        }
+    }
+
+    /**
+     * Find the fields following the prefix. Beyond the maximum number of
+     * fields, the last field takes the remainder of the message.
+     */
+    private void split(CharSequence message) {
+        record = message;
+        fieldCount = 0;
+        int start = PREFIX.length();
+        int length = message.length();
+        for (int i = start; i <= length; i++) {
+            if (i == length || (message.charAt(i) == SEPARATOR && fieldCount < fieldStart.length - 1)) {
+                fieldStart[fieldCount] = start;
+                fieldEnd[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    private boolean fieldEquals(int n, String s) {
+        if (n >= fieldCount || fieldEnd[n] - fieldStart[n] != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (record.charAt(fieldStart[n] + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String field(int n) {
+        return record.subSequence(fieldStart[n], fieldEnd[n]).toString();
+    }
+
+    private long parseLong(int n) {
+        long value = 0;
+        for (int i = fieldStart[n]; i < fieldEnd[n]; i++) {
+            char c = record.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private CommonState getState() {
+        return wrapper.getState();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ParserPipeline runs the event parsers on an executor (which may be
+ * shared by several worlds), separate from the thread reading server output.
+ * <p>
+ * Lines are partitioned across workers by their logging thread name, so
+ * lines from any one server thread are always parsed in order by the same
+ * worker, and HOLD parsers still receive every continued line. Each worker
+ * has its own EventDispatcher (and so its own holds) over the shared,
+ * stateless parsers.
+ * <p>
+ * Each worker is fed by a single-producer, single-consumer ring of
+ * reusable lines. A full ring blocks the reader until the worker catches
+ * up. A worker only occupies an executor thread while it has lines to
+ * parse, and gives it up after each batch so that other workers (of this
+ * or other worlds) get a turn.
+ * <p>
+ * With zero workers, lines are dispatched on the reader thread.
+ */
+public class ParserPipeline {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final EventDispatcher inlineDispatcher;
+    private final Worker[] workers;
+    private final Executor executor;
+    private volatile boolean closed = false;
+
+    private final Counter backpressure;
+
+    /**
+     * @param parsers     the event parsers
+     * @param workerCount number of workers (partitions), or 0 to parse on the reader thread
+     * @param capacity    lines queued per worker
+     * @param executor    executor to run the workers on
+     * @param metrics     metrics registry
+     */
+    public ParserPipeline(List<EventParser> parsers, int workerCount, int capacity, Executor executor, Metrics metrics) {
+        this.executor = executor;
+        this.backpressure = metrics.counter(
+                "minepass_parser_backpressure_total", "Times the reader waited for a full parser queue.");
+
+        if (workerCount <= 0) {
+            this.inlineDispatcher = createDispatcher(parsers);
+            this.workers = new Worker[0];
+            return;
+        }
+
+        this.inlineDispatcher = null;
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(createDispatcher(parsers), capacity);
+        }
+        metrics.gauge("minepass_parser_queue_depth", "Lines waiting for the event parsers.", this::getDepth);
+    }
+
+    private static EventDispatcher createDispatcher(List<EventParser> parsers) {
+        EventDispatcher dispatcher = new EventDispatcher();
+        for (EventParser p : parsers) {
+            dispatcher.register(p);
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Start the workers; must be called from the thread that will submit lines.
+     */
+    public void start() {
+        Thread reader = Thread.currentThread();
+        for (Worker w : workers) {
+            w.producer = reader;
+        }
+    }
+
+    /**
+     * Queue a formatted log line for parsing, waiting if its worker is full.
+     *
+     * @param line the line, which is copied before returning
+     */
+    public void submit(LogLine line) {
+        if (inlineDispatcher != null) {
+            inlineDispatcher.dispatch(line.getLevel(), line.getThread(), line.getMessage());
+            return;
+        }
+
+        Worker w = workers.length == 1 ? workers[0] : workers[partition(line.getThread())];
+        w.offer(line);
+    }
+
+    private int partition(CharSequence thread) {
+        int h = 0;
+        for (int i = 0; i < thread.length(); i++) {
+            h = 31 * h + thread.charAt(i);
+        }
+        return (h & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Stop accepting lines, and wait (briefly) for queued lines to be parsed.
+     */
+    public void close() {
+        closed = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (getDepth() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Wait until all queued lines have been parsed.
+     */
+    public void awaitIdle() {
+        while (getDepth() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    public int getDepth() {
+        int depth = 0;
+        for (Worker w : workers) {
+            depth += (int) (w.tail.get() - w.head.get());
+        }
+        return depth;
+    }
+
+    private final class Worker implements Runnable {
+
+        private final EventDispatcher dispatcher;
+        private final LogLine[] ring;
+        private final int mask;
+
+        // Next slot to read (written by the worker) and to write (written by the reader).
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        private Thread producer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean producerWaiting = false;
+
+        Worker(EventDispatcher dispatcher, int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+            this.dispatcher = dispatcher;
+            this.ring = new LogLine[size];
+            this.mask = size - 1;
+        }
+
+        void offer(LogLine line) {
+            long t = tail.get();
+            if (t - head.get() == ring.length) {
+                backpressure.increment();
+                while (t - head.get() == ring.length && !closed) {
+                    producerWaiting = true;
+                    if (t - head.get() == ring.length) {
+                        LockSupport.park(this);
+                    }
+                    producerWaiting = false;
+                }
+            }
+
+            // Lines are allocated on first use, so an idle ring costs little memory.
+            int i = (int) (t & mask);
+            if (ring[i] == null) {
+                ring[i] = new LogLine();
+            }
+            ring[i].copyFrom(line);
+            tail.set(t + 1);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, parse on this thread instead.
+                    run();
+                }
+            }
+        }
+
+        /**
+         * Parse a batch of queued lines, then queue another run if more remain.
+         */
+        @Override
+        public void run() {
+            for (int n = 0; n < BATCH_SIZE; n++) {
+                long h = head.get();
+                if (h == tail.get()) {
+                    break;
+                }
+
+                LogLine line = ring[(int) (h & mask)];
+                try {
+                    dispatcher.dispatch(line.getLevel(), line.getThread(), line.getMessage());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+
+                head.set(h + 1);
+                if (producerWaiting) {
+                    LockSupport.unpark(producer);
+                }
+            }
+
+            scheduled.set(false);
+            if (head.get() != tail.get()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.api.gameserver.MPWorldServer;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Lookup index of MinePass players by case-folded name and by id.
+ * <p>
+ * The index is immutable. A new one is built whenever the server data
+ * changes and swapped in as a whole, so lookups never need to lock.
+ *
+ * @see MinePassMT#getPlayerIndex()
+ */
+public final class PlayerIndex {
+
+    /**
+     * An index without players, for when there is no server data.
+     */
+    static public final PlayerIndex EMPTY = new PlayerIndex(null);
+
+    private final MPWorldServer server;
+    private final HashMap<String, MPPlayer> playersByName = new HashMap<>();
+    private final HashMap<UUID, MPPlayer> playersById = new HashMap<>();
+    private final long buildTime;
+
+    public PlayerIndex(MPWorldServer server) {
+        long start = System.nanoTime();
+        this.server = server;
+
+        if (server != null && server.players != null) {
+            for (MPPlayer player : server.players) {
+                // As with a linear search, the first of any case-insensitive duplicates wins.
+                playersByName.putIfAbsent(foldName(player.name), player);
+                if (player.getId() != null) {
+                    playersById.putIfAbsent(UUID.fromString(player.getId().toString()), player);
+                }
+            }
+        }
+
+        this.buildTime = System.nanoTime() - start;
+    }
+
+    public MPPlayer getByName(String playerName) {
+        return playerName == null ? null : playersByName.get(foldName(playerName));
+    }
+
+    public MPPlayer getById(UUID playerId) {
+        return playersById.get(playerId);
+    }
+
+    /**
+     * @return the server data this index was built from
+     */
+    public MPWorldServer getServer() {
+        return server;
+    }
+
+    public int size() {
+        return playersByName.size();
+    }
+
+    /**
+     * @return the time taken to build this index, in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    private static String foldName(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.gs.mt.wrapper.events.EventSubscriber;
+import net.minepass.gs.mt.wrapper.events.MinePassStarted;
+import net.minepass.gs.mt.wrapper.events.PlayerJoined;
+import net.minepass.gs.mt.wrapper.events.PlayerLeft;
+import net.minepass.gs.mt.wrapper.events.ServerEvent;
+import net.minepass.gs.mt.wrapper.events.ServerStopped;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the current players from join and leave events.
+ * All players are considered to have left when the server stops.
+ * <p>
+ * Players joining before MinePass has started (for the current server)
+ * are held back, and tracked once it has.
+ */
+public class PlayerSessionHandler implements EventSubscriber {
+
+    private final MP_MinetestWrapper wrapper;
+    private final long loginGracePeriod;
+
+    private boolean started = false;
+    private final LinkedHashSet<String> earlyJoins = new LinkedHashSet<>();
+
+    public PlayerSessionHandler(MP_MinetestWrapper wrapper) {
+        this.wrapper = wrapper;
+        this.loginGracePeriod = Long.parseLong(wrapper.config.getProperty("login_grace_ms", "1500"));
+    }
+
+    @Override
+    public void onEvents(List<ServerEvent> events) {
+        for (ServerEvent e : events) {
+            if (e instanceof PlayerJoined) {
+                if (started) {
+                    playerJoined(((PlayerJoined) e).name);
+                } else {
+                    earlyJoins.add(((PlayerJoined) e).name);
+                }
+            } else if (e instanceof PlayerLeft) {
+                if (!earlyJoins.remove(((PlayerLeft) e).name)) {
+                    playerLeft(((PlayerLeft) e).name);
+                }
+            } else if (e instanceof MinePassStarted) {
+                started = true;
+                for (String name : earlyJoins) {
+                    playerJoined(name);
+                }
+                earlyJoins.clear();
+            } else if (e instanceof ServerStopped) {
+                started = false;
+                earlyJoins.clear();
+
+                // Everyone left with the server.
+                for (String name : getState().pendingLogins.keySet()) {
+                    playerLeft(name);
+                }
+                getState().currentPlayers.updateAndGet(CurrentPlayers::cleared);
+                wrapper.getPlayerSessions().leaveAll();
+            }
+        }
+    }
+
+    private void playerJoined(String playerLoginName) {
+        MPPlayer player = wrapper.getPlayerIndex().getByName(playerLoginName);
+
+        UUID playerUUID = null;
+        if (player != null) {
+            playerUUID = UUID.fromString(player.getId().toString());
+        }
+
+        // Since UUIDs require data store search, cache mapping bi-directionally.
+        playerUUID = wrapper.getPlayerSessions().join(playerLoginName, playerUUID);
+
+        // In case we're going to kick the player, give time for the login to complete
+        // so that we avoid a Broken Pipe message to the client. The player only
+        // becomes current once the grace period ends.
+        final UUID currentUUID = playerUUID;
+        getState().pendingLogins.compute(playerLoginName, (name, previous) -> {
+            if (previous != null) {
+                previous.cancel(false);
+            }
+            return wrapper.getScheduler().schedule(() -> {
+                if (getState().pendingLogins.remove(name) != null) {
+                    getState().currentPlayers.updateAndGet(p -> p.with(name, currentUUID));
+                    MTGameserverTasks tasks = wrapper.getServerManager().getScheduledTasks();
+                    if (tasks != null) {
+                        tasks.playersChanged();
+                    }
+                }
+            }, loginGracePeriod, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void playerLeft(String playerLogoutName) {
+        ScheduledFuture<?> pending = getState().pendingLogins.remove(playerLogoutName);
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        getState().currentPlayers.updateAndGet(p -> p.without(playerLogoutName));
+        wrapper.getPlayerSessions().leave(playerLogoutName);
+    }
+
+    private CommonState getState() {
+        return wrapper.getState();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Bidirectional mapping of player names and UUIDs, for players seen in join events.
+ * <p>
+ * Both directions are updated together under one lock, so a name and a UUID
+ * always refer to each other. Online players are always retained. Offline
+ * players are retained so that late kicks and warnings can still be addressed,
+ * but are evicted (oldest first) once there are more than session_cache_size
+ * of them, or once they have been offline for session_idle_s.
+ */
+public class PlayerSessionRegistry {
+
+    private static final class Session {
+        final String name;
+        final UUID id;
+        boolean online;
+        long offlineSince;
+
+        Session(String name, UUID id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private final int maxOffline;
+    private final long maxIdle;
+
+    private final HashMap<String, Session> byName = new HashMap<>();
+    private final HashMap<UUID, Session> byId = new HashMap<>();
+
+    /**
+     * Offline sessions, in the order they went offline.
+     */
+    private final LinkedHashMap<String, Session> offline = new LinkedHashMap<>();
+
+    private final Counter sizeEvictions;
+    private final Counter idleEvictions;
+
+    public PlayerSessionRegistry(Properties config, Metrics metrics) {
+        this.maxOffline = Integer.parseInt(config.getProperty("session_cache_size", "10000").trim());
+        this.maxIdle = Long.parseLong(config.getProperty("session_idle_s", "86400").trim()) * 1000;
+
+        metrics.gauge("minepass_player_sessions", "Players in the session registry.", this::size);
+        sizeEvictions = metrics.counter("minepass_player_session_evictions_total",
+                "Offline players evicted from the session registry.", "reason", "size");
+        idleEvictions = metrics.counter("minepass_player_session_evictions_total",
+                "Offline players evicted from the session registry.", "reason", "idle");
+    }
+
+    /**
+     * Record a player joining.
+     * <p>
+     * Players unknown to MinePass keep the UUID they were last given, rather
+     * than being issued a new one on every join.
+     *
+     * @param name player name
+     * @param id   MinePass player ID, or null if the player is not known to MinePass
+     * @return the UUID now mapped to the player
+     */
+    public synchronized UUID join(String name, UUID id) {
+        Session session = byName.get(name);
+        if (session == null || (id != null && !id.equals(session.id))) {
+            if (session != null) {
+                remove(session);
+            }
+            session = new Session(name, id != null ? id : UUID.randomUUID());
+            Session previous = byId.get(session.id);
+            if (previous != null) {
+                // The UUID now belongs to a different name.
+                remove(previous);
+            }
+            byName.put(name, session);
+            byId.put(session.id, session);
+        }
+
+        session.online = true;
+        offline.remove(name);
+        evict(System.currentTimeMillis());
+        return session.id;
+    }
+
+    /**
+     * Record a player leaving, making them eligible for eviction.
+     */
+    public synchronized void leave(String name) {
+        Session session = byName.get(name);
+        if (session != null && session.online) {
+            setOffline(session, System.currentTimeMillis());
+        }
+        evict(System.currentTimeMillis());
+    }
+
+    /**
+     * Record all players leaving (e.g. when the server stops).
+     */
+    public synchronized void leaveAll() {
+        long now = System.currentTimeMillis();
+        for (Session session : byName.values()) {
+            if (session.online) {
+                setOffline(session, now);
+            }
+        }
+        evict(now);
+    }
+
+    public synchronized UUID getId(String name) {
+        Session session = byName.get(name);
+        return session == null ? null : session.id;
+    }
+
+    public synchronized String getName(UUID id) {
+        Session session = byId.get(id);
+        return session == null ? null : session.name;
+    }
+
+    public synchronized int size() {
+        return byName.size();
+    }
+
+    private void setOffline(Session session, long now) {
+        session.online = false;
+        session.offlineSince = now;
+        offline.put(session.name, session);
+    }
+
+    private void remove(Session session) {
+        byName.remove(session.name);
+        byId.remove(session.id);
+        offline.remove(session.name);
+    }
+
+    private void evict(long now) {
+        Iterator<Session> it = offline.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (offline.size() > maxOffline) {
+                sizeEvictions.increment();
+            } else if (now - session.offlineSince > maxIdle) {
+                idleEvictions.increment();
+            } else {
+                break;
+            }
+            it.remove();
+            byName.remove(session.name);
+            byId.remove(session.id);
+        }
+    }
+}
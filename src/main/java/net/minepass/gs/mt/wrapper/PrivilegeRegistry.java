@@ -0,0 +1,140 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of Minetest privileges, each interned to a bit position.
+ * <p>
+ * MinePass privileges ("mt:name", or "mt:all") are expanded once per
+ * distinct privilege list into a BitSet, and the comma separated privilege
+ * string is rendered once per distinct BitSet. Since most players share
+ * a handful of privilege lists, rendering a large roster only hits caches.
+ * <p>
+ * BitSets returned by the registry are shared cache entries and must
+ * not be modified.
+ *
+ * @see AuthRenderer
+ */
+public class PrivilegeRegistry {
+
+    static final String PRIVILEGE_PREFIX = "mt:";
+    static final String ALL_PRIVILEGES = "all";
+
+    private final ConcurrentHashMap<String, Integer> privilegeBits = new ConcurrentHashMap<>();
+    private final ArrayList<String> privilegeNames = new ArrayList<>();
+    private final BitSet allBits = new BitSet();
+
+    private final ConcurrentHashMap<List<String>, BitSet> expandedCache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<BitSet, String> renderedCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param allPrivileges the privileges granted by "mt:all"
+     */
+    public PrivilegeRegistry(Collection<String> allPrivileges) {
+        for (String name : allPrivileges) {
+            allBits.set(intern(name));
+        }
+    }
+
+    /**
+     * @param name a privilege name
+     * @return the bit position of the privilege
+     */
+    public int intern(String name) {
+        Integer bit = privilegeBits.get(name);
+        if (bit != null) {
+            return bit;
+        }
+
+        synchronized (privilegeNames) {
+            bit = privilegeBits.get(name);
+            if (bit == null) {
+                bit = privilegeNames.size();
+                privilegeNames.add(name);
+                privilegeBits.put(name, bit);
+            }
+            return bit;
+        }
+    }
+
+    /**
+     * Expand MinePass privileges to the set of Minetest privileges they grant.
+     *
+     * @param privileges MinePass privileges, non-Minetest entries are ignored
+     * @return the granted privileges (shared, do not modify)
+     */
+    public BitSet expand(List<String> privileges) {
+        BitSet bits = expandedCache.get(privileges);
+        if (bits != null) {
+            return bits;
+        }
+
+        bits = new BitSet();
+        for (String p : privileges) {
+            if (p.startsWith(PRIVILEGE_PREFIX)) {
+                String name = p.substring(PRIVILEGE_PREFIX.length());
+                if (name.equals(ALL_PRIVILEGES)) {
+                    bits.or(allBits);
+                } else if (!name.isEmpty()) {
+                    bits.set(intern(name));
+                }
+            }
+        }
+
+        BitSet existing = expandedCache.putIfAbsent(new ArrayList<>(privileges), bits);
+        return existing != null ? existing : bits;
+    }
+
+    /**
+     * @param bits privileges from {@link #expand(List)}
+     * @return the privilege names, comma separated
+     */
+    public String render(BitSet bits) {
+        String rendered = renderedCache.get(bits);
+        if (rendered != null) {
+            return rendered;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        synchronized (privilegeNames) {
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(privilegeNames.get(i));
+            }
+        }
+
+        rendered = sb.toString();
+        String existing = renderedCache.putIfAbsent(bits, rendered);
+        return existing != null ? existing : rendered;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import java.util.ArrayDeque;
+import java.util.Properties;
+
+/**
+ * Decides when to restart a crashed server.
+ * <p>
+ * Restarts are delayed with exponential backoff, which starts over once
+ * the server has run for a full crash window. If the server crashes more
+ * than the crash limit within the window it is considered to be crash
+ * looping, and is not restarted.
+ * <p>
+ * Configuration: restart_backoff_ms, restart_backoff_max_ms,
+ * restart_crash_limit and restart_crash_window_s.
+ */
+public class RestartPolicy {
+
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final int crashLimit;
+    private final long crashWindow;
+
+    private final ArrayDeque<Long> crashes = new ArrayDeque<>();
+    private int consecutiveCrashes = 0;
+
+    public RestartPolicy(Properties config) {
+        this.initialBackoff = Long.parseLong(config.getProperty("restart_backoff_ms", "1000").trim());
+        this.maxBackoff = Long.parseLong(config.getProperty("restart_backoff_max_ms", "60000").trim());
+        this.crashLimit = Integer.parseInt(config.getProperty("restart_crash_limit", "5").trim());
+        this.crashWindow = Long.parseLong(config.getProperty("restart_crash_window_s", "300").trim()) * 1000;
+    }
+
+    /**
+     * Record a crash.
+     *
+     * @param uptime how long the server ran (ms)
+     * @return the delay before restarting (ms), or -1 if the server should not be restarted
+     */
+    public long onCrash(long uptime) {
+        long now = System.currentTimeMillis();
+        crashes.add(now);
+        while (crashes.peekFirst() < now - crashWindow) {
+            crashes.pollFirst();
+        }
+        if (crashes.size() > crashLimit) {
+            return -1;
+        }
+
+        if (uptime >= crashWindow) {
+            consecutiveCrashes = 0;
+        }
+        long delay = Math.min(maxBackoff, initialBackoff << Math.min(consecutiveCrashes, 20));
+        consecutiveCrashes++;
+        return delay;
+    }
+
+    public int getRecentCrashes() {
+        return crashes.size();
+    }
+}
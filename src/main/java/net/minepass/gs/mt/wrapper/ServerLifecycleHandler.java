@@ -0,0 +1,59 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.events.EventSubscriber;
+import net.minepass.gs.mt.wrapper.events.ModListed;
+import net.minepass.gs.mt.wrapper.events.ServerEvent;
+import net.minepass.gs.mt.wrapper.events.ServerStarted;
+import net.minepass.gs.mt.wrapper.events.ServerVersionDetected;
+
+import java.util.List;
+
+/**
+ * Records the server details reported at startup, and starts MinePass
+ * once the server is ready (repeating the handshake after a restart).
+ */
+public class ServerLifecycleHandler implements EventSubscriber {
+
+    private final MP_MinetestWrapper wrapper;
+
+    public ServerLifecycleHandler(MP_MinetestWrapper wrapper) {
+        this.wrapper = wrapper;
+    }
+
+    @Override
+    public void onEvents(List<ServerEvent> events) {
+        for (ServerEvent e : events) {
+            if (e instanceof ServerVersionDetected) {
+                wrapper.getState().minetestVersion = ((ServerVersionDetected) e).version;
+            } else if (e instanceof ModListed) {
+                wrapper.getState().plugins.put(((ModListed) e).name, "");
+            } else if (e instanceof ServerStarted) {
+                wrapper.getServerManager().startMinePass();
+            }
+        }
+    }
+}
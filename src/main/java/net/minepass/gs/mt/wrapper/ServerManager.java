@@ -28,20 +28,25 @@ import net.minepass.api.gameserver.MPAsciiArt;
 import net.minepass.api.gameserver.MPWorldServerDetails;
 import net.minepass.api.gameserver.embed.solidtx.TxLog;
 import net.minepass.api.gameserver.embed.solidtx.TxSync;
+import net.minepass.gs.mt.wrapper.events.MinePassStarted;
+import net.minepass.gs.mt.wrapper.events.ServerStopped;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Histogram;
 import net.minepass.gs.mt.wrapper.parsers.PlayerLoginEventParser;
 import net.minepass.gs.mt.wrapper.parsers.PlayerLogoutEventParser;
 import net.minepass.gs.mt.wrapper.parsers.ServerStartEventParser;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.StringReader;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The ServerManager reads log output from the vanilla server, aided by the
@@ -50,136 +55,215 @@ import java.util.regex.Pattern;
  * MinePass data syncing and scheduled tasks are started as secondary threads
  * once the ServerManager verifies that startup is completed. They are later
  * stopped when the manager detects the server is shutting down.
+ * <p>
+ * The output of successive server processes may be processed (when the
+ * server is restarted), in which case MinePass keeps running and only the
+ * handshake with the mod is repeated for each process.
  *
  * @see ConsoleManager
  */
 public class ServerManager implements Runnable {
 
+    /**
+     * Interval between MinePass syncs (seconds).
+     */
+    static final int SYNC_INTERVAL_S = 10;
+
     private MP_MinetestWrapper wrapper;
 
-    private TxLog logger;
     private Process serverProcess;
-    private BufferedReader serverLogReader;
+    private LogLineReader serverLogReader;
+    private final LogLine serverLogLine = new LogLine();
+    private final LinkedBlockingQueue<LogLineReader> serverOutputs = new LinkedBlockingQueue<>();
+    private final LogLineReader endOfOutputs = new LogLineReader(new StringReader(""));
 
-    private Thread syncThread;
-    private Thread scheduledTasks;
+    private boolean coreStarted = false;
+    private Future<?> syncLoop;
+    private volatile MTGameserverTasks scheduledTasks;
 
-    private LinkedList<EventParser> eventParsers;
-    private HashMap<String, EventParser> eventParserHold;
+    private ParserPipeline parserPipeline;
+    private final ModRecordDecoder modRecordDecoder;
+    private ConsoleForwarder consoleForwarder;
+
+    private final Counter linesRead;
+    private final Counter linesUnformatted;
+    private final Histogram lineTime;
 
     public ServerManager(MP_MinetestWrapper wrapper) {
         this.wrapper = wrapper;
-        this.logger = wrapper.getLogger();
 
-        this.eventParserHold = new HashMap<>();
-        this.eventParsers = new LinkedList<>();
-        initEventParsers();
+        this.linesRead = wrapper.getMetrics().counter(
+                "minepass_log_lines_total", "Lines of server output read.");
+        this.linesUnformatted = wrapper.getMetrics().counter(
+                "minepass_log_lines_unformatted_total", "Lines of server output not in the log format.");
+        this.lineTime = wrapper.getMetrics().histogram(
+                "minepass_log_line_duration", "Time to process a line of server output.");
+
+        this.modRecordDecoder = new ModRecordDecoder(wrapper);
+        this.consoleForwarder = new ConsoleForwarder(
+                wrapper::getLogger, this, wrapper.getExecutors().getConsole(), wrapper.config, wrapper.getMetrics());
+        this.parserPipeline = new ParserPipeline(
+                initEventParsers(),
+                Integer.parseInt(wrapper.config.getProperty("parser_threads", "1").trim()),
+                Integer.parseInt(wrapper.config.getProperty("parser_buffer", "1024").trim()),
+                wrapper.getExecutors().getParsers(),
+                wrapper.getMetrics()
+        );
     }
 
     public void setServerProcess(Process process) {
         this.serverProcess = process;
-        InputStream is = process.getInputStream();
-        InputStreamReader isr = new InputStreamReader(is);
-        this.serverLogReader = new BufferedReader(isr);
+        setServerOutput(process.getInputStream());
     }
 
-    private static Pattern serverLogPattern = Pattern.compile(
-            "^(?<ts>[0-9: -]+): (?<output>(?<level>[A-Z]+)(\\[(?<thread>[a-zA-Z]+)\\]): (?<msg>.*))$"
-    );
+    /**
+     * Add a stream of server output to process (normally from the server process).
+     * Streams are processed in turn, each until it closes.
+     *
+     * @param is the server output
+     */
+    public void setServerOutput(InputStream is) {
+        InputStreamReader isr = new InputStreamReader(is);
+        serverOutputs.add(new LogLineReader(isr));
+    }
 
-    private final String THREAD = "thread";
-    private final String LEVEL = "level";
-    private final String MESSAGE = "msg";
-    private final String OUTPUT = "output";
+    /**
+     * Stop once the output already given has been processed.
+     */
+    public void finish() {
+        serverOutputs.add(endOfOutputs);
+    }
 
-    private void initEventParsers() {
-        eventParsers.add(new ServerStartEventParser(wrapper));
-        eventParsers.add(new PlayerLoginEventParser(wrapper));
-        eventParsers.add(new PlayerLogoutEventParser(wrapper));
+    private List<EventParser> initEventParsers() {
+        List<EventParser> parsers = new ArrayList<>();
+        parsers.add(new ServerStartEventParser(wrapper));
+        parsers.add(new PlayerLoginEventParser(wrapper));
+        parsers.add(new PlayerLogoutEventParser(wrapper));
+        return parsers;
     }
 
     @Override
     public void run() {
-        EventParser.Status status;
-        String logOutput;
-        Matcher m;
-
-        while ((logOutput = getNextLogEvent()) != null) {
-            m = serverLogPattern.matcher(logOutput);
-
-            if (m.find()) {
-                switch (m.group(LEVEL)) {
-                    case "ERROR":
-                        logger.error(m.group(OUTPUT), this);
-                        break;
-                    default:
-                        logger.info(m.group(OUTPUT), this);
-                }
-            } else {
-                logger.info("*".concat(logOutput), this);
-                continue;
-            }
+        LogLine line = serverLogLine;
 
-            if (eventParserHold.containsKey(m.group(THREAD))) {
-                // This log entry should be applied to an existing event on a held thread.
-                //
-                status = eventParserHold.get(m.group(THREAD)).acceptLogMessage(m.group(MESSAGE), true);
-                if (status == EventParser.Status.HANDLED) {
-                    eventParserHold.remove(m.group(THREAD));
-                }
-            } else {
-                // Search for applicable parser.
-                //
-                runParsers:
-                for (EventParser p : eventParsers) {
-                    if (!p.isEnabled())
-                        continue;
+        parserPipeline.start();
 
-                    if (!p.filterLevel(m.group(LEVEL)))
-                        continue;
+        while (getNextServerOutput()) {
+            while (getNextLogEvent(line)) {
+                long start = System.nanoTime();
+                linesRead.increment();
 
-                    if (!p.filterThread(m.group(THREAD)))
+                if (line.isFormatted()) {
+                    // Fast path for records from the mod, which are not shown on the console.
+                    if (ModRecordDecoder.isRecord(line.getMessage())) {
+                        modRecordDecoder.decode(line.getMessage());
+                        lineTime.recordSince(start);
                         continue;
-
-                    status = p.acceptLogMessage(m.group(MESSAGE), false);
-
-                    switch (status) {
-                        case HANDLED:
-                            break runParsers;
-                        case HOLD:
-                            eventParserHold.put(m.group(THREAD), p);
-                            break runParsers;
                     }
+                    consoleForwarder.forward(line.getLevel(), line.getOutput());
+                } else {
+                    consoleForwarder.forward(null, line);
+                    linesUnformatted.increment();
+                    lineTime.recordSince(start);
+                    continue;
                 }
+
+                parserPipeline.submit(line);
+                lineTime.recordSince(start);
+            }
+
+            // Let the parsers and subscribers catch up, so the stop follows all events
+            // of this server, and reset its state before the next server's output is read.
+            parserPipeline.awaitIdle();
+            try {
+                wrapper.getEventBus().awaitIdle(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // Ignore.
+            }
+            serverStopped();
+            wrapper.getEventBus().publish(new ServerStopped());
+            if (wrapper.getLogger() != null) {
+                wrapper.getLogger().info("Server output closed.", this);
             }
         }
+
+        parserPipeline.close();
+        consoleForwarder.close();
     }
 
     public void startMinePass() {
         if (getState().minepassStarted) {
             return;
         }
+
+        // The server loads while MinePass initializes, so it may be ready first.
+        StartupTimer startupTimer = wrapper.getStartupTimer();
+        if (startupTimer != null) {
+            startupTimer.record("server_ready");
+        }
+        boolean available = wrapper.awaitMinePass();
         getState().minepassStarted = true;
+        wrapper.getEventBus().publish(new MinePassStarted());
+
+        if (!available) {
+            // Replaying a log, or MinePass failed to initialize.
+            return;
+        }
 
-        // Start sync thread.
-        this.syncThread = new Thread(new TxSync(wrapper.getMinepass(), 10));
-        syncThread.setDaemon(false);  // ensure any disk writing finishes
-        syncThread.start();
+        // Keep MinePass running if the server was restarted.
+        if (!coreStarted) {
+            startCore();
+        }
 
         // Send server config.
         sendServerCommand("#join_url", wrapper.getMinepass().getServer().join_url);
         sendServerCommand("#founder_name", wrapper.getMinepass().getServer().founder.name);
 
-        // Start scheduled tasks.
-        this.scheduledTasks = new Thread(new MTGameserverTasks(wrapper), "MinePass");
-        scheduledTasks.setDaemon(true);
-        scheduledTasks.start();
+        // Local auth may have been updated after the server loaded it.
+        scheduledTasks.reloadLocalAuth();
 
         // Output MinePass logo.
         for (String x : MPAsciiArt.getLogo("System Ready")) {
-            logger.info(x, null);
+            wrapper.getLogger().info(x, null);
+        }
+
+        sendServerDetails();
+
+        if (startupTimer != null) {
+            startupTimer.record("handshake_complete");
+            wrapper.getLogger().info(startupTimer.toString(), this);
+        }
+    }
+
+    /**
+     * Start MinePass syncing and the scheduled tasks.
+     * <p>
+     * The core's sync loop runs until interrupted, sleeping between syncs,
+     * so it holds a thread of the sync executor for as long as MinePass runs.
+     */
+    private synchronized void startCore() {
+        coreStarted = true;
+        TxSync sync = new TxSync(wrapper.getMinepass(), SYNC_INTERVAL_S);
+        long delay = wrapper.getSyncDelay();
+        if (delay > 0) {
+            // Supervised worlds keep to their slot in the sync schedule.
+            wrapper.getScheduler().schedule(() -> startSync(sync), delay, TimeUnit.MILLISECONDS);
+        } else {
+            startSync(sync);
+        }
+
+        // Start scheduled tasks.
+        this.scheduledTasks = new MTGameserverTasks(wrapper);
+        scheduledTasks.start();
+    }
+
+    private synchronized void startSync(TxSync sync) {
+        if (coreStarted && syncLoop == null) {
+            syncLoop = wrapper.getExecutors().getSync().submit(sync);
         }
+    }
 
+    private void sendServerDetails() {
         // Build server details.
         MPWorldServerDetails details = new MPWorldServerDetails();
         details.plugin_type = "minetest-wrapper";
@@ -206,16 +290,36 @@ public class ServerManager implements Runnable {
         wrapper.getMinepass().sendObject(details, null);
     }
 
-    public void stopMinePass() {
-        if (syncThread != null) {
-            syncThread.interrupt();
+    /**
+     * The server has stopped, so a new server process must complete the handshake again.
+     */
+    private void serverStopped() {
+        getState().minepassStarted = false;
+        getState().modRecords = false;
+        getState().modAuthChanges = false;
+        getState().plugins.clear();
+    }
+
+    public synchronized void stopMinePass() {
+        if (syncLoop != null) {
+            syncLoop.cancel(true);
+            syncLoop = null;
         }
         if (scheduledTasks != null) {
-            scheduledTasks.interrupt();
+            scheduledTasks.stop();
+            scheduledTasks = null;
         }
+        coreStarted = false;
         getState().minepassStarted = false;
     }
 
+    /**
+     * @return the scheduled gameserver tasks, or null if MinePass is not running
+     */
+    public MTGameserverTasks getScheduledTasks() {
+        return scheduledTasks;
+    }
+
     public void tellPlayer(String name, String message) {
         sendServerCommand("/msg", name, message);
     }
@@ -224,23 +328,36 @@ public class ServerManager implements Runnable {
         sendServerCommand("/kick", name, message);
     }
 
-    private String getNextLogEvent() {
-        String s;
-
+    /**
+     * Block until the next server output is available.
+     *
+     * @return false once there will be no more server output
+     */
+    private boolean getNextServerOutput() {
         try {
-            while (true) {
-                if (serverLogReader != null && serverLogReader.ready()) {
-                    s = serverLogReader.readLine();
-                    break;
-                }
-                Thread.sleep(200);
-            }
-            return s;
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+            serverLogReader = serverOutputs.take();
+            return serverLogReader != endOfOutputs;
+        } catch (InterruptedException e) {
+            return false;
         }
+    }
 
-        return null;
+    /**
+     * Block until the next line of server output is available.
+     * <p>
+     * Lines are delivered as soon as the server writes them, and the
+     * calling thread sleeps while the server is idle.
+     *
+     * @param line the line to read into
+     * @return false once the server output has closed
+     */
+    private boolean getNextLogEvent(LogLine line) {
+        try {
+            return serverLogReader.readLine(line);
+        } catch (IOException e) {
+            TxLog.log(TxLog.Level.ERROR, "Failed to read server output: ".concat(String.valueOf(e.getMessage())));
+            return false;
+        }
     }
 
     private void sendServerCommand(String command, String... params) {
@@ -0,0 +1,68 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when each startup phase completed, relative to the wrapper
+ * launching the server. Phases may complete in any order, since MinePass
+ * and the server start in parallel.
+ */
+public class StartupTimer {
+
+    private final Metrics metrics;
+    private final long start = System.nanoTime();
+    private final LinkedHashMap<String, Long> phases = new LinkedHashMap<>();
+
+    public StartupTimer(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Record the completion of a phase.
+     *
+     * @param phase the phase name, e.g. "minepass_ready"
+     */
+    public synchronized void record(String phase) {
+        long elapsed = System.nanoTime() - start;
+        phases.put(phase, elapsed);
+        metrics.gauge("minepass_startup_phase_seconds", "Time from launch until each startup phase completed.",
+                "phase", phase, () -> elapsed / 1e9);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("Startup:");
+        for (Map.Entry<String, Long> p : phases.entrySet()) {
+            sb.append(String.format(" %s %d ms,", p.getKey().replace('_', ' '), p.getValue() / 1000000));
+        }
+        sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+}
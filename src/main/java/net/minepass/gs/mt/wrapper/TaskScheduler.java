@@ -0,0 +1,209 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.embed.solidtx.TxLog;
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Histogram;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time, each at its own interval.
+ * <p>
+ * Tasks run on a scheduled executor, which may be shared (by the worlds
+ * under a WorldSupervisor), but the tasks of one scheduler never run
+ * concurrently, so they can share state without further locking.
+ * <p>
+ * A task may also be triggered to run as soon as possible (e.g. in response
+ * to an event). Triggers are coalesced while a run is pending, and a
+ * triggered run restarts the task's interval. Ticks that could not be run on
+ * time (because another task or the executor was busy) are skipped and
+ * counted, as are runs that took longer than the task's interval.
+ */
+public class TaskScheduler {
+
+    public final class Task {
+        private final String name;
+        private final Runnable runnable;
+        private final long interval;
+
+        private final AtomicBoolean triggered = new AtomicBoolean();
+        private ScheduledFuture<?> next;
+        private long nextId;
+        private long due;
+
+        private final Histogram runTime;
+        private final Counter overruns;
+        private final Counter missedTicks;
+        private final Counter triggers;
+
+        private Task(String name, Runnable runnable, long interval) {
+            this.name = name;
+            this.runnable = runnable;
+            this.interval = interval;
+            this.runTime = metrics.histogram("minepass_tasks_duration",
+                    "Time to run each scheduled task.", "task", name);
+            this.overruns = metrics.counter("minepass_task_overruns_total",
+                    "Task runs that took longer than the task interval.", "task", name);
+            this.missedTicks = metrics.counter("minepass_task_missed_ticks_total",
+                    "Task ticks skipped as the scheduler was busy.", "task", name);
+            this.triggers = metrics.counter("minepass_task_triggers_total",
+                    "Task runs triggered by events.", "task", name);
+        }
+
+        /**
+         * Run the task as soon as possible.
+         */
+        public void trigger() {
+            if (triggered.compareAndSet(false, true)) {
+                try {
+                    executor.execute(() -> {
+                        synchronized (lock) {
+                            triggered.set(false);
+                            if (shutdown) {
+                                return;
+                            }
+                            triggers.increment();
+                            if (next != null) {
+                                next.cancel(false);
+                            }
+                            run(System.nanoTime());
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // Shutting down.
+                }
+            }
+        }
+
+        private void tick(long id) {
+            synchronized (lock) {
+                // A tick already waiting for the lock when a trigger replaced it is stale.
+                if (shutdown || id != nextId) {
+                    return;
+                }
+                long now = System.nanoTime();
+                if (now - due >= interval) {
+                    missedTicks.add((now - due) / interval);
+                }
+                run(now);
+            }
+        }
+
+        /**
+         * Schedule the next tick (lock held).
+         */
+        private void scheduleTick(long delay) {
+            long id = ++nextId;
+            next = executor.schedule(() -> tick(id), delay, TimeUnit.NANOSECONDS);
+        }
+
+        private void run(long start) {
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                TxLog.log(TxLog.Level.ERROR, String.format("Task %s failed: %s", name, e));
+                e.printStackTrace();
+            }
+
+            long end = System.nanoTime();
+            runTime.record(end - start);
+            if (end - start > interval) {
+                overruns.increment();
+            }
+
+            // Next tick is one interval after this run started, or the
+            // first interval boundary still in the future.
+            due = start + interval;
+            if (due < end) {
+                long missed = (end - due) / interval + 1;
+                missedTicks.add(missed);
+                due += missed * interval;
+            }
+            if (!shutdown && !executor.isShutdown()) {
+                scheduleTick(due - end);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Metrics metrics;
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+    private final List<Task> tasks = new ArrayList<>();
+    private boolean shutdown = false;
+
+    /**
+     * @param executor executor to run the tasks on
+     * @param metrics  metrics for the scheduled tasks
+     */
+    public TaskScheduler(ScheduledExecutorService executor, Metrics metrics) {
+        this.metrics = metrics;
+        this.executor = executor;
+    }
+
+    /**
+     * Add a task, first run after one interval.
+     *
+     * @param name     task name, for metrics and logging
+     * @param interval time between runs
+     * @param unit     unit of the interval
+     * @param runnable the task
+     * @return the task, which can be triggered
+     */
+    public Task schedule(String name, long interval, TimeUnit unit, Runnable runnable) {
+        Task task = new Task(name, runnable, unit.toNanos(interval));
+        synchronized (lock) {
+            tasks.add(task);
+            task.due = System.nanoTime() + task.interval;
+            task.scheduleTick(task.interval);
+        }
+        return task;
+    }
+
+    /**
+     * Stop running tasks. The executor is left running, as it may be shared.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (Task task : tasks) {
+                if (task.next != null) {
+                    task.next.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.embed.solidtx.TxLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The WorldSupervisor runs several worlds, each with its own server
+ * process and wrapper, in a single JVM.
+ * <p>
+ * The worlds share the wrapper executors (scheduler, event delivery,
+ * parsers, log writer and sync threads), and the console is read once and
+ * routed by world name ("[world] [command]", or "* [command]" for all
+ * worlds). Each world's MinePass sync keeps its own slot in a schedule
+ * anchored at the supervisor's start, spread evenly over the sync interval,
+ * with worlds sharing credentials in alternate slots. A world whose core is
+ * restarted rejoins its slot, so syncs stay staggered however often
+ * servers restart.
+ */
+public class WorldSupervisor {
+
+    private final LinkedHashMap<String, MP_MinetestWrapper> wrappers = new LinkedHashMap<>();
+    private final WrapperExecutors executors;
+
+    public WorldSupervisor(String serverBinary, List<String> worldPaths, boolean createWorld, boolean supervise) {
+        this.executors = new WrapperExecutors(Math.min(4, (worldPaths.size() + 7) / 8));
+
+        // Group worlds by credentials, so those sharing them take alternate sync slots.
+        LinkedHashMap<String, List<MP_MinetestWrapper>> groups = new LinkedHashMap<>();
+        for (String worldPath : worldPaths) {
+            String name = new File(worldPath).getName();
+            if (wrappers.containsKey(name)) {
+                throw new RuntimeException("World names must be unique: ".concat(name));
+            }
+
+            MP_MinetestWrapper wrapper = new MP_MinetestWrapper(serverBinary, worldPath, createWorld);
+            wrapper.setRestartServer(supervise);
+            wrappers.put(name, wrapper);
+
+            String credentials = wrapper.config.getProperty("setup_api_host", "") + " "
+                    + wrapper.config.getProperty("setup_server_id", "");
+            groups.computeIfAbsent(credentials, k -> new ArrayList<>()).add(wrapper);
+        }
+
+        List<MP_MinetestWrapper> syncOrder = new ArrayList<>();
+        for (List<MP_MinetestWrapper> group : groups.values()) {
+            if (group.size() > 1) {
+                TxLog.log(TxLog.Level.WARN, String.format(
+                        "%d worlds share the same MinePass credentials, their syncs will be staggered.", group.size()
+                ));
+            }
+        }
+        for (int i = 0; syncOrder.size() < wrappers.size(); i++) {
+            for (List<MP_MinetestWrapper> group : groups.values()) {
+                if (i < group.size()) {
+                    syncOrder.add(group.get(i));
+                }
+            }
+        }
+
+        long syncEpoch = System.currentTimeMillis();
+        long syncInterval = ServerManager.SYNC_INTERVAL_S * 1000L;
+        for (int i = 0; i < syncOrder.size(); i++) {
+            syncOrder.get(i).setSupervised(executors, syncEpoch, i * syncInterval / syncOrder.size());
+        }
+    }
+
+    /**
+     * Run all worlds until their servers have exited.
+     *
+     * @param serverArgs additional server arguments, for every world
+     */
+    public void run(String[] serverArgs) {
+        List<Thread> threads = new ArrayList<>();
+        for (Map.Entry<String, MP_MinetestWrapper> w : wrappers.entrySet()) {
+            Thread t = new Thread(() -> w.getValue().runServer(serverArgs), "MPWorld-".concat(w.getKey()));
+            t.start();
+            threads.add(t);
+        }
+
+        Thread consoleThread = new Thread(this::routeConsole, "MPConsole");
+        consoleThread.setDaemon(true);
+        consoleThread.start();
+
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        executors.shutdown();
+    }
+
+    private void routeConsole() {
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+        String input;
+
+        try {
+            while ((input = br.readLine()) != null) {
+                String[] parts = input.trim().split(" +", 2);
+                if (parts.length < 2) {
+                    TxLog.log(TxLog.Level.WARN, "Console commands must be prefixed by a world name (or *).");
+                    continue;
+                }
+
+                for (Map.Entry<String, MP_MinetestWrapper> w : wrappers.entrySet()) {
+                    if (parts[0].equals("*") || parts[0].equals(w.getKey())) {
+                        ConsoleManager console = w.getValue().getConsoleManager();
+                        if (console != null) {
+                            console.sendCommand(parts[1]);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read a list of world paths, one per line (blank lines and # comments are ignored).
+     *
+     * @param file the world list
+     * @return the world paths
+     */
+    static List<String> readWorldList(File file) {
+        List<String> worldPaths = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(file.toPath())) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    worldPaths.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read world list", e);
+        }
+        return worldPaths;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.events.EventBus;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors that run a wrapper's background work.
+ * <p>
+ * A standalone wrapper creates its own set, and the worlds under a
+ * WorldSupervisor all share one, so that the thread count does not grow
+ * with the number of worlds. The exceptions are the thread reading each
+ * server's output and the thread waiting on each server process, since
+ * both block on the process.
+ * <ul>
+ * <li>scheduler - the scheduled tasks and deferred actions (MPScheduler)</li>
+ * <li>events - event delivery (MPEvents)</li>
+ * <li>parsers - event parser workers (MPParser)</li>
+ * <li>console - writing server output to the console (MPLogWriter)</li>
+ * <li>sync - the MinePass sync loops (MPSync)</li>
+ * </ul>
+ *
+ * @see WorldSupervisor
+ */
+public final class WrapperExecutors {
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService events;
+    private final ExecutorService parsers;
+    private final ExecutorService console;
+    private final ExecutorService sync;
+
+    /**
+     * @param threads threads for the scheduler and the parser workers
+     */
+    public WrapperExecutors(int threads) {
+        this.scheduler = Executors.newScheduledThreadPool(threads, threadFactory("MPScheduler", threads, true));
+        this.events = EventBus.createExecutor();
+        this.parsers = Executors.newFixedThreadPool(threads, threadFactory("MPParser", threads, true));
+        this.console = Executors.newSingleThreadExecutor(threadFactory("MPLogWriter", 1, true));
+
+        // The core's sync loop runs until interrupted. Its threads are not
+        // daemons, so that any disk writing finishes.
+        this.sync = Executors.newCachedThreadPool(threadFactory("MPSync", 0, false));
+    }
+
+    private static ThreadFactory threadFactory(String name, int threads, boolean daemon) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, threads == 1 ? name : name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(daemon);
+            return t;
+        };
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService getEvents() {
+        return events;
+    }
+
+    public ExecutorService getParsers() {
+        return parsers;
+    }
+
+    public ExecutorService getConsole() {
+        return console;
+    }
+
+    public ExecutorService getSync() {
+        return sync;
+    }
+
+    /**
+     * Stop accepting work. Running sync loops should already have been interrupted.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        events.shutdown();
+        parsers.shutdown();
+        console.shutdown();
+        sync.shutdown();
+    }
+}
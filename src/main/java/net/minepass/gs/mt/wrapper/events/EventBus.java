@@ -0,0 +1,255 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper.events;
+
+import net.minepass.gs.mt.wrapper.metrics.Counter;
+import net.minepass.gs.mt.wrapper.metrics.Histogram;
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The EventBus delivers server events to their subscribers.
+ * <p>
+ * Each subscription has its own queue, drained in batches on a shared
+ * pool of daemon threads, so publishing never waits for a subscriber and
+ * a slow subscriber only delays its own events. A subscription receives
+ * its events in publication order, including across all of its types,
+ * and is never called concurrently.
+ */
+public class EventBus {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Metrics metrics;
+    private final ExecutorService executor;
+    private final boolean sharedExecutor;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Class<?>, Route> routes = new ConcurrentHashMap<>();
+
+    public EventBus(Metrics metrics) {
+        this.metrics = metrics;
+        this.executor = createExecutor();
+        this.sharedExecutor = false;
+    }
+
+    /**
+     * Create an EventBus delivering on a shared executor, which is not shut down with the bus.
+     *
+     * @param metrics  metrics registry
+     * @param executor executor for event delivery
+     * @see #createExecutor()
+     */
+    public EventBus(Metrics metrics, ExecutorService executor) {
+        this.metrics = metrics;
+        this.executor = executor;
+        this.sharedExecutor = true;
+    }
+
+    /**
+     * @return a new executor suitable for event delivery
+     */
+    public static ExecutorService createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "MPEvents-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Subscribe to one or more event types (including their subclasses).
+     *
+     * @param name       subscriber name, used in metrics
+     * @param subscriber the subscriber
+     * @param types      event types to deliver
+     */
+    @SafeVarargs
+    public final void subscribe(String name, EventSubscriber subscriber, Class<? extends ServerEvent>... types) {
+        subscriptions.add(new Subscription(name, subscriber, types));
+        routes.clear();
+    }
+
+    /**
+     * Queue an event for all of its subscribers.
+     *
+     * @param event the event
+     */
+    public void publish(ServerEvent event) {
+        Route route = routes.computeIfAbsent(event.getClass(), Route::new);
+        route.published.increment();
+        for (Subscription s : route.subscriptions) {
+            s.offer(event);
+        }
+    }
+
+    /**
+     * Wait until all published events have been delivered.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return false if events were still pending when the timeout expired
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isIdle()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private boolean isIdle() {
+        for (Subscription s : subscriptions) {
+            if (s.pending.get() > 0 || s.scheduled.get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop delivering events, allowing queued batches a moment to finish.
+     */
+    public void shutdown() {
+        try {
+            if (sharedExecutor) {
+                awaitIdle(5, TimeUnit.SECONDS);
+            } else {
+                executor.shutdown();
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            // Ignore.
+        }
+    }
+
+    /**
+     * The subscriptions for one concrete event type.
+     */
+    private final class Route {
+        final Subscription[] subscriptions;
+        final Counter published;
+
+        Route(Class<?> type) {
+            ArrayList<Subscription> matched = new ArrayList<>();
+            for (Subscription s : EventBus.this.subscriptions) {
+                if (s.accepts(type)) {
+                    matched.add(s);
+                }
+            }
+            this.subscriptions = matched.toArray(new Subscription[matched.size()]);
+            this.published = metrics.counter(
+                    "minepass_events_published_total", "Server events published.", "event", type.getSimpleName());
+        }
+    }
+
+    private final class Subscription implements Runnable {
+        private final EventSubscriber subscriber;
+        private final Class<? extends ServerEvent>[] types;
+
+        private final ConcurrentLinkedQueue<ServerEvent> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final Histogram deliveryTime;
+
+        Subscription(String name, EventSubscriber subscriber, Class<? extends ServerEvent>[] types) {
+            this.subscriber = subscriber;
+            this.types = types;
+
+            this.deliveryTime = metrics.histogram(
+                    "minepass_event_delivery_duration", "Time subscribers spent handling event batches.",
+                    "subscriber", name);
+            metrics.gauge("minepass_event_queue_depth", "Events waiting for a subscriber.",
+                    "subscriber", name, pending::get);
+        }
+
+        boolean accepts(Class<?> type) {
+            for (Class<?> t : types) {
+                if (t.isAssignableFrom(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void offer(ServerEvent event) {
+            queue.add(event);
+            pending.incrementAndGet();
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down.
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<ServerEvent> batch = new ArrayList<>();
+            ServerEvent event;
+            while (batch.size() < BATCH_SIZE && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+            pending.addAndGet(-batch.size());
+
+            if (!batch.isEmpty()) {
+                long start = System.nanoTime();
+                try {
+                    subscriber.onEvents(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                deliveryTime.recordSince(start);
+            }
+
+            // Allow the next batch (possibly queued meanwhile) to be scheduled.
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,692 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper.loadtest;
+
+import net.minepass.gs.mt.wrapper.metrics.Histogram;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-in for the Minetest server, for load testing the wrapper.
+ * <p>
+ * Accepts the wrapper's server arguments ("--server --world [path]") and
+ * writes Minetest style log output: startup, the MinePass mod handshake and
+ * mod list, player joins and leaves, and debug noise, at configurable rates.
+ * <p>
+ * The mod is emulated as of version 0.3.0 (see mod/minepass/init.lua): it
+ * writes structured "MP|" records (hello, status, mods, loaded, join, leave
+ * and step), refuses joins until the wrapper has reloaded its auth, and
+ * consumes the command journal, applying @auth_set/@auth_del changes to the
+ * players it admits, with kicks ending the player's session. The older mod's
+ * plain log messages, which the wrapper decodes with its log parsers, can
+ * be written instead with --fake-legacy-mod.
+ * <p>
+ * On exit, the command pickup latency and the join to kick latency are
+ * logged and written to fake-minetest-report.txt in the world directory.
+ * Pickup latency runs from the time the command's batch was written to the
+ * journal until it is read. Join to kick latency includes the wrapper's
+ * login grace period (login_grace_ms), during which passes are not checked.
+ * <p>
+ * Options (passed through by the wrapper):
+ * <ul>
+ * <li>--fake-players N - size of the player pool (default 100)</li>
+ * <li>--fake-join-rate N - joins per second (default 5)</li>
+ * <li>--fake-join-burst N - players joining at once when the wrapper connects (default 0)</li>
+ * <li>--fake-session S - mean session length in seconds (default 60)</li>
+ * <li>--fake-spam-rate N - debug lines per second (default 100)</li>
+ * <li>--fake-duration S - run time in seconds, 0 to run until stopped (default 0)</li>
+ * <li>--fake-step MS - server step interval (default 100)</li>
+ * <li>--fake-command-budget US - time for commands per step, as minepass_command_budget_us (default 2000)</li>
+ * <li>--fake-enforce-auth - only admit players in the auth, as the mod does</li>
+ * <li>--fake-legacy-mod - emulate the mod before structured records (0.2.x)</li>
+ * <li>--fake-seed N - random seed (default 1)</li>
+ * </ul>
+ */
+public class FakeMinetestServer {
+
+    static final String version = "0.4.13";
+    static final String modVersion = "0.3.0";
+    static final String[] mods = {
+            "beds", "boats", "bones", "bucket", "creative", "default", "doors", "dye", "farming", "fire",
+            "flowers", "minepass", "screwdriver", "sethome", "stairs", "tnt", "vessels", "wool"
+    };
+
+    private static final long commandInterval = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long stepInterval = TimeUnit.SECONDS.toNanos(10);
+
+    private File worldPath;
+    private int playerPool = 100;
+    private double joinRate = 5;
+    private int joinBurst = 0;
+    private double sessionLength = 60;
+    private double spamRate = 100;
+    private double duration = 0;
+    private long stepMillis = 100;
+    private long commandBudget = 2000;
+    private boolean enforceAuth = false;
+    private boolean legacyMod = false;
+    private long seed = 1;
+
+    private Random random;
+    private Writer out;
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private String timestamp;
+
+    private long stepCount = 0;
+    private boolean wrapperConnected = false;
+    private boolean authReady = false;
+    private Set<String> authPlayers = new HashSet<>();
+
+    // Step timing, as reported by the mod.
+    private long stepTimer = 0;
+    private long stepTimerCount = 0;
+    private long stepMax = 0;
+
+    // Online players, with their join time and (nanoTime) session end.
+    private final LinkedHashMap<String, long[]> online = new LinkedHashMap<>();
+
+    // Command journal state, as kept by the mod.
+    private long commandSeq = 0;
+    private long commandOffset = 0;
+    private String commandGeneration = null;
+    private long batchTime = 0;
+    private long commandTimer = 0;
+    private final ArrayDeque<String> commandQueue = new ArrayDeque<>();
+    private final ArrayDeque<Long> commandQueueSeqs = new ArrayDeque<>();
+
+    private final Histogram pickupLatency = new Histogram();
+    private final Histogram kickLatency = new Histogram();
+    private long joins = 0;
+    private long leaves = 0;
+    private long kicks = 0;
+    private long denied = 0;
+    private long commands = 0;
+    private long linesWritten = 0;
+
+    public static void main(String[] args) throws Exception {
+        FakeMinetestServer server = new FakeMinetestServer();
+        server.parseArgs(args);
+        server.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            boolean hasValue = i + 1 < args.length;
+            switch (a) {
+                case "--world":
+                    if (hasValue)
+                        worldPath = new File(args[++i]);
+                    break;
+                case "--fake-players":
+                    if (hasValue)
+                        playerPool = Integer.parseInt(args[++i]);
+                    break;
+                case "--fake-join-rate":
+                    if (hasValue)
+                        joinRate = Double.parseDouble(args[++i]);
+                    break;
+                case "--fake-join-burst":
+                    if (hasValue)
+                        joinBurst = Integer.parseInt(args[++i]);
+                    break;
+                case "--fake-session":
+                    if (hasValue)
+                        sessionLength = Double.parseDouble(args[++i]);
+                    break;
+                case "--fake-spam-rate":
+                    if (hasValue)
+                        spamRate = Double.parseDouble(args[++i]);
+                    break;
+                case "--fake-duration":
+                    if (hasValue)
+                        duration = Double.parseDouble(args[++i]);
+                    break;
+                case "--fake-step":
+                    if (hasValue)
+                        stepMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--fake-command-budget":
+                    if (hasValue)
+                        commandBudget = Long.parseLong(args[++i]);
+                    break;
+                case "--fake-enforce-auth":
+                    enforceAuth = true;
+                    break;
+                case "--fake-legacy-mod":
+                    legacyMod = true;
+                    break;
+                case "--fake-seed":
+                    if (hasValue)
+                        seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    // Ignore other server options (e.g. --server).
+            }
+        }
+
+        if (worldPath == null || !worldPath.isDirectory()) {
+            throw new IllegalArgumentException("World path not given, or does not exist. Please use --world argument.");
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        random = new Random(seed);
+        out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        long end = duration > 0 ? start + (long) (duration * 1e9) : Long.MAX_VALUE;
+        long stepNanos = TimeUnit.MILLISECONDS.toNanos(stepMillis);
+        double joinCredit = 0;
+        double spamCredit = 0;
+
+        try {
+            updateTimestamp();
+            logStartup();
+
+            long next = System.nanoTime();
+            while (System.nanoTime() < end) {
+                next += stepNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                updateTimestamp();
+                long now = System.nanoTime();
+                if (step(stepNanos)) {
+                    break;
+                }
+
+                if (wrapperConnected) {
+                    joinCredit += joinRate * stepMillis / 1000.0;
+                    for (; joinCredit >= 1; joinCredit--) {
+                        joinRandomPlayer(now);
+                    }
+                    endSessions(now);
+                }
+
+                spamCredit += spamRate * stepMillis / 1000.0;
+                for (; spamCredit >= 1; spamCredit--) {
+                    logSpam();
+                }
+
+                out.flush();
+            }
+
+            log("ACTION", "Server", "Server: Shutting down");
+            report();
+            out.flush();
+        } catch (IOException e) {
+            // Output closed, the wrapper has gone.
+            report();
+        }
+    }
+
+    // Mod Emulation
+    // ------------------------------------------------------------------------------------------------------------- //
+
+    /**
+     * A server step of the MinePass mod.
+     *
+     * @return true if the server should shut down
+     */
+    private boolean step(long dtime) throws IOException {
+        if (stepCount == 5) {
+            loadPlayers();
+            loadCommandSeq();
+            String status = "# Server: version=" + version + ", uptime=0.5, max_lag=0.1, clients={}";
+            if (legacyMod) {
+                log("ACTION", "Server", "MinePass plugin v" + modVersion);
+                log("ACTION", "Server", status);
+                for (String m : mods) {
+                    log("ACTION", "Server", "[Mod] " + m);
+                }
+                log("ACTION", "Server", "End Mod List");
+                log("ACTION", "Server", "MinePass plugin loaded.");
+                log("ACTION", "Server", "awaiting connection from MP wrapper...");
+            } else {
+                record("hello", modVersion, "auth");
+                record("status", version, status);
+                record("mods", String.join(",", mods));
+                record("loaded");
+                log("ACTION", "Server", "MinePass plugin v" + modVersion + " loaded, awaiting connection from MP wrapper...");
+            }
+        }
+
+        // Report step timing to the wrapper.
+        stepTimer += dtime;
+        stepTimerCount++;
+        stepMax = Math.max(stepMax, dtime);
+        if (stepTimer >= stepInterval) {
+            if (!legacyMod) {
+                record("step",
+                        TimeUnit.NANOSECONDS.toMicros(stepTimer / stepTimerCount),
+                        TimeUnit.NANOSECONDS.toMicros(stepMax),
+                        stepTimerCount);
+            }
+            stepTimer = 0;
+            stepTimerCount = 0;
+            stepMax = 0;
+        }
+
+        if (stepCount > 5) {
+            commandTimer += dtime;
+            if (commandTimer >= commandInterval) {
+                commandTimer = 0;
+                readCommands();
+            }
+            runCommands();
+        }
+
+        if (!wrapperConnected) {
+            if (stepCount == 80) {
+                log("ERROR", "Server", "MP wrapper still not connected");
+            }
+            if (stepCount == 200) {
+                log("ERROR", "Server", "MinePass failed. Shutting down...");
+                return true;
+            }
+        }
+
+        stepCount++;
+        return false;
+    }
+
+    private void loadPlayers() {
+        Set<String> players = new HashSet<>();
+        File shadow = new File(worldPath, "auth.shadow.txt");
+        try (BufferedReader reader = new BufferedReader(new FileReader(shadow))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int i = line.indexOf(':');
+                if (i > 0) {
+                    players.add(line.substring(0, i));
+                }
+            }
+        } catch (IOException e) {
+            // No players yet.
+        }
+        authPlayers = players;
+    }
+
+    private void loadCommandSeq() {
+        try {
+            List<String> lines = Files.readAllLines(new File(worldPath, "command.ack").toPath());
+            if (!lines.isEmpty()) {
+                commandSeq = Long.parseLong(lines.get(0).split(" ")[0]);
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Start from the beginning.
+        }
+    }
+
+    private void saveCommandSeq(long used, long backlog) throws IOException {
+        File ack = new File(worldPath, "command.ack");
+        File tmp = new File(worldPath, "command.ack.tmp");
+        Files.write(tmp.toPath(), (commandSeq + " " + used + " " + backlog + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), ack.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void readCommands() throws IOException {
+        File journal = new File(worldPath, "command.journal");
+        if (!journal.isFile()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journal, "r")) {
+            // The offset is only valid within one generation of the journal. When the
+            // wrapper rewrites it, rescan it (sequence numbers prevent repeats).
+            String header = file.readLine();
+            if (header == null || !header.matches("MPJ [0-9]+")) {
+                return;
+            }
+            if (!header.equals(commandGeneration)) {
+                commandGeneration = header;
+                commandOffset = header.length() + 1;
+                batchTime = 0;
+            }
+
+            long size = file.length();
+            if (size <= commandOffset) {
+                return;
+            }
+
+            byte[] data = new byte[(int) (size - commandOffset)];
+            file.seek(commandOffset);
+            file.readFully(data);
+
+            // Only complete records are consumed, a partial one is read again next time.
+            long queuedSeq = commandQueueSeqs.isEmpty() ? commandSeq : commandQueueSeqs.peekLast();
+            long now = System.currentTimeMillis();
+            int lineStart = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    continue;
+                }
+                try {
+                    if (line.startsWith("T ")) {
+                        batchTime = Long.parseLong(line.substring(space + 1));
+                        continue;
+                    }
+                    long seq = Long.parseLong(line.substring(0, space));
+                    if (seq > queuedSeq) {
+                        commandQueue.add(line.substring(space + 1));
+                        commandQueueSeqs.add(seq);
+                        queuedSeq = seq;
+                        if (batchTime > 0) {
+                            pickupLatency.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - batchTime)));
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    // Skip malformed record.
+                }
+            }
+            commandOffset += lineStart;
+        }
+    }
+
+    private void runCommands() throws IOException {
+        if (commandQueue.isEmpty()) {
+            return;
+        }
+
+        // Leave the remainder for later steps once the budget is spent, as the mod does.
+        long start = System.nanoTime();
+        long used;
+        do {
+            // The ack is saved before each command, as the mod does.
+            commandSeq = commandQueueSeqs.poll();
+            saveCommandSeq(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), commandQueue.size() - 1);
+            runCommand(commandQueue.poll());
+            commands++;
+            used = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        } while (!commandQueue.isEmpty() && used < commandBudget);
+        saveCommandSeq(used, commandQueue.size());
+    }
+
+    private void runCommand(String line) throws IOException {
+        if (line.length() < 2) {
+            return;
+        }
+        char type = line.charAt(0);
+        int space = line.indexOf(' ');
+        String cmd = space < 0 ? line.substring(1) : line.substring(1, space);
+        String args = space < 0 ? "" : line.substring(space + 1).trim();
+
+        if (type == '/') {
+            switch (cmd) {
+                case "kick":
+                    String name = args.split(" ", 2)[0];
+                    long[] session = online.get(name);
+                    if (session != null) {
+                        kickLatency.record(System.nanoTime() - session[0]);
+                        kicks++;
+                        leave(name);
+                    }
+                    break;
+                case "auth_reload":
+                    loadPlayers();
+                    if (wrapperConnected && !authReady) {
+                        authLoaded();
+                    }
+                    break;
+                case "msg":
+                    break;
+                default:
+                    log("ERROR", "Server", "Unknown command: " + cmd);
+                    return;
+            }
+            log("ACTION", "Server", "/" + cmd + " " + args);
+        } else if (type == '#') {
+            if (!wrapperConnected) {
+                wrapperConnected = true;
+                log("ACTION", "Server", "MinePass wrapper connected.");
+                if (legacyMod) {
+                    // The older mod admitted players as soon as the wrapper connected.
+                    authLoaded();
+                }
+            }
+            log("ACTION", "Server", "MP " + cmd + " = " + args);
+        } else if (type == '@') {
+            // Auth changes, applied in memory.
+            String name;
+            if (cmd.equals("auth_set")) {
+                int colon = args.indexOf(':');
+                if (colon <= 0) {
+                    return;
+                }
+                name = args.substring(0, colon);
+                authPlayers.add(name);
+            } else if (cmd.equals("auth_del")) {
+                name = args;
+                authPlayers.remove(name);
+            } else {
+                log("ERROR", "Server", "Unknown command: " + cmd);
+                return;
+            }
+            log("INFO", "Server", "MP " + cmd + " " + name);
+        }
+    }
+
+    // Players
+    // ------------------------------------------------------------------------------------------------------------- //
+
+    /**
+     * Admit players, now that the auth is current.
+     */
+    private void authLoaded() throws IOException {
+        authReady = true;
+        long now = System.nanoTime();
+        for (int i = 0; i < joinBurst; i++) {
+            joinRandomPlayer(now);
+        }
+    }
+
+    private void joinRandomPlayer(long now) throws IOException {
+        if (online.size() >= playerPool) {
+            return;
+        }
+
+        String name;
+        do {
+            name = String.format("player%04d", random.nextInt(playerPool));
+        } while (online.containsKey(name));
+
+        if (!authReady) {
+            // Refused until the wrapper has reloaded the auth.
+            denied++;
+            return;
+        }
+        if (enforceAuth && !authPlayers.contains(name)) {
+            denied++;
+            log("ACTION", "Server", "Server: User " + name + " at " + randomAddress()
+                    + " supplied wrong password (auth mechanism: SRP).");
+            return;
+        }
+
+        long session = (long) (-Math.log(1 - random.nextDouble()) * sessionLength * 1e9);
+        online.put(name, new long[]{now, now + session});
+        joins++;
+        String address = randomAddress();
+        log("ACTION", "Server", name + " [" + address + "] joins game. List of players: " + playerList());
+        if (!legacyMod) {
+            record("join", name, address);
+        }
+    }
+
+    private void endSessions(long now) throws IOException {
+        List<String> ended = new ArrayList<>();
+        for (Map.Entry<String, long[]> e : online.entrySet()) {
+            if (e.getValue()[1] <= now) {
+                ended.add(e.getKey());
+            }
+        }
+        for (String name : ended) {
+            leave(name);
+        }
+    }
+
+    private void leave(String name) throws IOException {
+        online.remove(name);
+        leaves++;
+        log("ACTION", "Server", name + " leaves game. List of players: " + playerList());
+        if (!legacyMod) {
+            record("leave", name, 0);
+        }
+    }
+
+    private String playerList() {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<String> i = online.keySet().iterator(); i.hasNext(); ) {
+            sb.append(i.next());
+            if (i.hasNext()) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private String randomAddress() {
+        return "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+    }
+
+    // Output
+    // ------------------------------------------------------------------------------------------------------------- //
+
+    private void logStartup() throws IOException {
+        log("ACTION", "Main", "Fake Minetest server (MinePass load test)");
+        log("ACTION", "Main", "World at [" + worldPath.getAbsolutePath() + "]");
+        log("ACTION", "Main", "Server for gameid=\"minetest\" listening on 0.0.0.0:30000.");
+        for (String m : mods) {
+            log("INFO", "Main", "Loading and running mod \"" + m + "\"");
+        }
+        out.flush();
+    }
+
+    private void logSpam() throws IOException {
+        int x = random.nextInt(4096) - 2048;
+        int y = random.nextInt(64) - 32;
+        int z = random.nextInt(4096) - 2048;
+        if (random.nextBoolean()) {
+            log("VERBOSE", "Emerge", "emergeBlocks(): (" + x + "," + y + "," + z + ") queued");
+        } else {
+            log("INFO", "Emerge", "Generated block (" + x + "," + y + "," + z + ") in " + random.nextInt(50) + "ms");
+        }
+    }
+
+    /**
+     * Write a structured record for the wrapper, as the mod does.
+     */
+    private void record(Object... fields) throws IOException {
+        StringBuilder sb = new StringBuilder("MP");
+        for (Object f : fields) {
+            sb.append('|').append(f);
+        }
+        log("ACTION", "Server", sb.toString());
+    }
+
+    private void log(String level, String thread, String message) throws IOException {
+        out.write(timestamp);
+        out.write(": ");
+        out.write(level);
+        out.write('[');
+        out.write(thread);
+        out.write("]: ");
+        out.write(message);
+        out.write('\n');
+        linesWritten++;
+    }
+
+    private void updateTimestamp() {
+        timestamp = timestampFormat.format(new Date());
+    }
+
+    private void report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("lines_written %d", linesWritten));
+        lines.add(String.format("joins %d", joins));
+        lines.add(String.format("leaves %d", leaves));
+        lines.add(String.format("denied %d", denied));
+        lines.add(String.format("kicks %d", kicks));
+        lines.add(String.format("commands %d", commands));
+        addLatency(lines, "command_pickup_ms", pickupLatency);
+        addLatency(lines, "join_kick_ms", kickLatency);
+
+        try (PrintWriter report = new PrintWriter(new File(worldPath, "fake-minetest-report.txt"), "UTF-8")) {
+            for (String l : lines) {
+                report.println(l);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            for (String l : lines) {
+                log("ACTION", "Main", "Load test: " + l);
+            }
+        } catch (IOException e) {
+            // Output closed.
+        }
+    }
+
+    private static void addLatency(List<String> lines, String name, Histogram h) {
+        lines.add(String.format("%s_count %d", name, h.getCount()));
+        for (double p : new double[]{50, 90, 99}) {
+            lines.add(String.format("%s_p%.0f %.1f", name, p, h.getValueAtPercentile(p) / 1e6));
+        }
+        lines.add(String.format("%s_max %.1f", name, h.getMax() / 1e6));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the wrapper's metrics.
+ * <p>
+ * Counters and histograms are updated lock-free on the hot paths, and are
+ * cheap enough to leave enabled in production. Gauges are sampled only
+ * when metrics are read. Registration is idempotent: asking for an
+ * existing metric returns it, so components may be recreated freely.
+ * <p>
+ * Metrics may carry a single label (e.g. the parser name), and are
+ * exposed via JMX and optionally in the Prometheus text format.
+ *
+ * @see MetricsMBean
+ * @see PrometheusExporter
+ */
+public class Metrics {
+
+    public enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * A registered metric, with its name, help text and optional label.
+     */
+    public static final class Metric {
+        public final String name;
+        public final String help;
+        public final Type type;
+        public final String labelName;
+        public final String labelValue;
+
+        private final Object value;
+
+        private Metric(String name, String help, Type type, String labelName, String labelValue, Object value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+            this.labelValue = labelValue;
+            this.value = value;
+        }
+
+        public Counter getCounter() {
+            return (Counter) value;
+        }
+
+        public Histogram getHistogram() {
+            return (Histogram) value;
+        }
+
+        public double getGaugeValue() {
+            return ((DoubleSupplier) value).getAsDouble();
+        }
+    }
+
+    // Sorted so that metrics sharing a name (with different labels) are adjacent.
+    private final ConcurrentSkipListMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    public Counter counter(String name, String help, String labelName, String labelValue) {
+        return register(name, help, Type.COUNTER, labelName, labelValue, new Counter()).getCounter();
+    }
+
+    /**
+     * @param name histogram name, without a unit suffix (values are recorded in nanoseconds)
+     */
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+
+    public Histogram histogram(String name, String help, String labelName, String labelValue) {
+        return register(name, help, Type.HISTOGRAM, labelName, labelValue, new Histogram()).getHistogram();
+    }
+
+    /**
+     * Register a gauge, replacing any existing gauge of the same name and label.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        gauge(name, help, null, null, value);
+    }
+
+    public void gauge(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        Metric metric = new Metric(name, help, Type.GAUGE, labelName, labelValue, value);
+        metrics.put(key(name, labelValue), metric);
+    }
+
+    public Collection<Metric> getMetrics() {
+        return metrics.values();
+    }
+
+    private Metric register(String name, String help, Type type, String labelName, String labelValue, Object value) {
+        Metric metric = metrics.computeIfAbsent(key(name, labelValue),
+                k -> new Metric(name, help, type, labelName, labelValue, value));
+        if (metric.type != type) {
+            throw new IllegalArgumentException("Metric already registered with another type: ".concat(name));
+        }
+        return metric;
+    }
+
+    private static String key(String name, String labelValue) {
+        return labelValue == null ? name : name.concat(" ").concat(labelValue);
+    }
+}
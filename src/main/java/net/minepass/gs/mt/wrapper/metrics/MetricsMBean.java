@@ -0,0 +1,145 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Exposes the wrapper metrics as read-only JMX attributes.
+ * <p>
+ * Counters and gauges map to one attribute each. Histograms map to
+ * count, mean, p50, p90, p99 and max attributes, in nanoseconds.
+ * Labelled metrics are named "name[label]".
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private final Metrics metrics;
+
+    public MetricsMBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Register with the platform MBean server as net.minepass:type=Wrapper,world=[world].
+     */
+    public static ObjectName register(Metrics metrics, String world) throws JMException {
+        ObjectName name = new ObjectName("net.minepass", "type", "Wrapper");
+        name = new ObjectName(name.getCanonicalName().concat(",world=").concat(ObjectName.quote(world)));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new MetricsMBean(metrics), name);
+        return name;
+    }
+
+    private Map<String, Supplier<Object>> getAttributes() {
+        LinkedHashMap<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+        for (Metrics.Metric m : metrics.getMetrics()) {
+            String name = m.labelValue == null ? m.name : m.name + "[" + m.labelValue + "]";
+            switch (m.type) {
+                case COUNTER:
+                    attributes.put(name, () -> m.getCounter().get());
+                    break;
+                case GAUGE:
+                    attributes.put(name, m::getGaugeValue);
+                    break;
+                case HISTOGRAM:
+                    Histogram h = m.getHistogram();
+                    attributes.put(name.concat(".count"), h::getCount);
+                    attributes.put(name.concat(".mean"), h::getMean);
+                    attributes.put(name.concat(".p50"), () -> h.getValueAtPercentile(50));
+                    attributes.put(name.concat(".p90"), () -> h.getValueAtPercentile(90));
+                    attributes.put(name.concat(".p99"), () -> h.getValueAtPercentile(99));
+                    attributes.put(name.concat(".max"), h::getMax);
+                    break;
+            }
+        }
+        return attributes;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<Object> value = getAttributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Supplier<Object>> attributes = getAttributes();
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            Supplier<Object> value = attributes.get(name);
+            if (value != null) {
+                list.add(new Attribute(name, value.get()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only.");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        // No operations are available.
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        ArrayList<MBeanAttributeInfo> info = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Object>> a : getAttributes().entrySet()) {
+            String type = a.getValue().get().getClass().getName();
+            info.add(new MBeanAttributeInfo(a.getKey(), type, a.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "MinePass wrapper metrics",
+                info.toArray(new MBeanAttributeInfo[info.size()]), null, null, null);
+    }
+}
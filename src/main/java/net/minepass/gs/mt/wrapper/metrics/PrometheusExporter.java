@@ -0,0 +1,150 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the wrapper metrics in the Prometheus text format at
+ * http://127.0.0.1:[port]/metrics
+ * <p>
+ * Only the loopback interface is bound. Histograms are exported as
+ * summaries, in seconds.
+ */
+public class PrometheusExporter {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 1.0};
+
+    private final Metrics metrics;
+    private final HttpServer server;
+
+    public PrometheusExporter(Metrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "MPMetrics");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public String render() {
+        StringBuilder sb = new StringBuilder();
+        String lastName = null;
+
+        for (Metrics.Metric m : metrics.getMetrics()) {
+            String name = m.type == Metrics.Type.HISTOGRAM ? m.name.concat("_seconds") : m.name;
+            if (!name.equals(lastName)) {
+                sb.append("# HELP ").append(name).append(' ').append(m.help).append('\n');
+                sb.append("# TYPE ").append(name).append(' ').append(getTypeName(m.type)).append('\n');
+                lastName = name;
+            }
+
+            switch (m.type) {
+                case COUNTER:
+                    appendSample(sb, name, m, null, m.getCounter().get());
+                    break;
+                case GAUGE:
+                    appendSample(sb, name, m, null, m.getGaugeValue());
+                    break;
+                case HISTOGRAM:
+                    Histogram h = m.getHistogram();
+                    for (double q : QUANTILES) {
+                        appendSample(sb, name, m, q, h.getValueAtPercentile(q * 100) / 1e9);
+                    }
+                    appendSample(sb, name.concat("_sum"), m, null, h.getSum() / 1e9);
+                    appendSample(sb, name.concat("_count"), m, null, h.getCount());
+                    break;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static void appendSample(StringBuilder sb, String name, Metrics.Metric m, Double quantile, double value) {
+        sb.append(name);
+        if (m.labelValue != null || quantile != null) {
+            sb.append('{');
+            if (m.labelValue != null) {
+                sb.append(m.labelName).append("=\"").append(escape(m.labelValue)).append('"');
+            }
+            if (quantile != null) {
+                if (m.labelValue != null) {
+                    sb.append(',');
+                }
+                sb.append("quantile=\"").append(quantile).append('"');
+            }
+            sb.append('}');
+        }
+        sb.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    private static String getTypeName(Metrics.Type type) {
+        switch (type) {
+            case COUNTER:
+                return "counter";
+            case GAUGE:
+                return "gauge";
+            default:
+                return "summary";
+        }
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
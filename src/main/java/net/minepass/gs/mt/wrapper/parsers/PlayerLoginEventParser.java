@@ -24,11 +24,10 @@
 
 package net.minepass.gs.mt.wrapper.parsers;
 
-import net.minepass.api.gameserver.MPPlayer;
 import net.minepass.gs.mt.wrapper.EventParser;
 import net.minepass.gs.mt.wrapper.MP_MinetestWrapper;
+import net.minepass.gs.mt.wrapper.events.PlayerJoined;
 
-import java.util.UUID;
 import java.util.regex.Matcher;
 
 public class PlayerLoginEventParser extends EventParser {
@@ -43,37 +42,18 @@ public class PlayerLoginEventParser extends EventParser {
     }
 
     @Override
-    protected Status run(Matcher m) {
-        try {
-            // In case we're going to kick the player, give time for the login to complete
-            // so that we avoid a Broken Pipe message to the client.
-            Thread.sleep(1500);
-        } catch (InterruptedException e) {
-            // Ignore.
-        }
-
-        String playerLoginName = m.group("name");
-        MPPlayer player = wrapper.getMinepass().getPlayerByName(playerLoginName);
-
-        UUID playerUUID = null;
-        if (player != null) {
-            playerUUID = UUID.fromString(player.getId().toString());
-        } else {
-            playerUUID = UUID.randomUUID();
-        }
-
-        // Since UUIDs require data store search, cache mapping bi-directionally.
-        getState().playerAuthNames.put(playerUUID, playerLoginName);
-        getState().playerAuthUUIDs.put(playerLoginName, playerUUID);
-
-        // Update current players.
-        getState().currentPlayers.put(playerLoginName, playerUUID);
+    protected String getLiteralString(String version) {
+        return "joins game";
+    }
 
+    @Override
+    protected Status run(Matcher m) {
+        wrapper.getEventBus().publish(new PlayerJoined(m.group("name")));
         return Status.HANDLED;
     }
 
     @Override
     protected boolean isEnabled() {
-        return getState().minepassStarted;
+        return !getState().modRecords;
     }
 }
@@ -26,6 +26,7 @@ package net.minepass.gs.mt.wrapper.parsers;
 
 import net.minepass.gs.mt.wrapper.EventParser;
 import net.minepass.gs.mt.wrapper.MP_MinetestWrapper;
+import net.minepass.gs.mt.wrapper.events.PlayerLeft;
 
 import java.util.regex.Matcher;
 
@@ -40,15 +41,19 @@ public class PlayerLogoutEventParser extends EventParser {
         return "(?<name>[^ ]+).*leaves game";
     }
 
+    @Override
+    protected String getLiteralString(String version) {
+        return "leaves game";
+    }
+
     @Override
     protected Status run(Matcher m) {
-        String playerLogoutName = m.group("name");
-        getState().currentPlayers.remove(playerLogoutName);
+        wrapper.getEventBus().publish(new PlayerLeft(m.group("name")));
         return Status.HANDLED;
     }
 
     @Override
     protected boolean isEnabled() {
-        return getState().minepassStarted;
+        return !getState().modRecords;
     }
 }
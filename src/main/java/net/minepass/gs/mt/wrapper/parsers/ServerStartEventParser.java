@@ -24,8 +24,12 @@
 
 package net.minepass.gs.mt.wrapper.parsers;
 
+import net.minepass.api.gameserver.embed.solidtx.TxLog;
 import net.minepass.gs.mt.wrapper.EventParser;
 import net.minepass.gs.mt.wrapper.MP_MinetestWrapper;
+import net.minepass.gs.mt.wrapper.events.ModListed;
+import net.minepass.gs.mt.wrapper.events.ServerStarted;
+import net.minepass.gs.mt.wrapper.events.ServerVersionDetected;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -41,15 +45,21 @@ public class ServerStartEventParser extends EventParser {
         return "MinePass plugin v(?<version>[0-9]+(\\.[0-9]+)+)";
     }
 
+    @Override
+    protected String getLiteralString(String version) {
+        return "MinePass plugin v";
+    }
+
     @Override
     protected Status run(Matcher m) {
         if (versionCompare(wrapper.getWrapperVersion(), m.group("version")) != 0) {
-            wrapper.getLogger().error(String.format(
+            // The server may be ready before MinePass has provided a logger.
+            TxLog.log(TxLog.Level.ERROR, String.format(
                     "Mod/Wrapper version mismatch: %s <> %s",
                     wrapper.getWrapperVersion(),
                     m.group("version")
-            ), this);
-            wrapper.getLogger().error("Please update the minepass mod in your game folder.", this);
+            ));
+            TxLog.log(TxLog.Level.ERROR, "Please update the minepass mod in your game folder.");
         }
         return Status.HOLD;
     }
@@ -59,27 +69,27 @@ public class ServerStartEventParser extends EventParser {
     private static Pattern serverLoadedPattern = Pattern.compile("MinePass plugin loaded");
 
     @Override
-    protected boolean continuedInput(String logInput) {
+    protected boolean continuedInput(CharSequence logInput) {
         Matcher m;
 
         // Server version.
         m = serverInfoPattern.matcher(logInput);
         if (m.find()) {
-            getState().minetestVersion = m.group("version");
+            wrapper.getEventBus().publish(new ServerVersionDetected(m.group("version")));
             return true;
         }
 
         // Mods.
         m = serverModPattern.matcher(logInput);
         if (m.find()) {
-            getState().plugins.put(m.group("name"), "");
+            wrapper.getEventBus().publish(new ModListed(m.group("name")));
             return true;
         }
 
         // Finalize.
         m = serverLoadedPattern.matcher(logInput);
         if (m.find()) {
-            getServerManager().startMinePass();
+            wrapper.getEventBus().publish(new ServerStarted());
             return false;
         }
 
@@ -88,6 +98,6 @@ public class ServerStartEventParser extends EventParser {
 
     @Override
     protected boolean isEnabled() {
-        return !getState().minepassStarted;
+        return !getState().minepassStarted && !getState().modRecords;
     }
 }
@@ -0,0 +1,212 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.api.gameserver.MPPlayer;
+import net.minepass.api.gameserver.MPWorldServer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuthDeltaTrackerTest {
+
+    private AuthRenderer renderer;
+    private AuthDeltaTracker tracker;
+    private MPWorldServer server;
+
+    @Before
+    public void setUp() {
+        renderer = new AuthRenderer(Arrays.asList("interact", "shout", "fly"));
+        tracker = new AuthDeltaTracker(renderer);
+        server = new MPWorldServer();
+        server.players = new ArrayList<>();
+        server.bypass_players = new HashMap<>();
+    }
+
+    private static MPPlayer player(String name, String secret, String realm, String... privileges) {
+        MPPlayer p = new MPPlayer();
+        p.name = name;
+        p.secret = secret;
+        p.realm = realm;
+        p.privileges = new ArrayList<>(Arrays.asList(privileges));
+        return p;
+    }
+
+    private List<String> update(int expectedRendered) {
+        List<String> commands = new ArrayList<>();
+        assertEquals(expectedRendered, tracker.update(server, commands));
+        return commands;
+    }
+
+    @Test
+    public void firstUpdateRendersEveryone() {
+        server.players.add(player("alice", "#1#a", "os", "mt:interact", "mt:shout"));
+        server.players.add(player("steve", "#1#s", "mc", "mt:interact"));
+        server.players.add(player("carol", "#1#c", "os", "web:forum"));
+        server.bypass_players.put("guest", "#1#g");
+
+        assertEquals(Arrays.asList(
+                "@auth_set alice:#1#a:interact,shout",
+                "@auth_set guest:#1#g"
+        ), update(3));
+        assertEquals(3, tracker.size());
+    }
+
+    @Test
+    public void unchangedPlayersAreNotRendered() {
+        server.players.add(player("alice", "#1#a", "os", "mt:interact"));
+        server.bypass_players.put("guest", "#1#g");
+        update(2);
+
+        assertEquals(Collections.emptyList(), update(0));
+    }
+
+    @Test
+    public void changedPlayersAreRenderedAgain() {
+        MPPlayer alice = player("alice", "#1#a", "os", "mt:interact");
+        server.players.add(alice);
+        server.players.add(player("bob", "#1#b", "os", "mt:interact"));
+        update(2);
+
+        alice.secret = "#1#a2";
+        assertEquals(Collections.singletonList("@auth_set alice:#1#a2:interact"), update(1));
+
+        // Changed in place, which is only noticed as the tracker keeps a copy.
+        alice.privileges.add("mt:fly");
+        assertEquals(Collections.singletonList("@auth_set alice:#1#a2:interact,fly"), update(1));
+
+        // Rendered again, but the auth line is unchanged.
+        alice.privileges.add("web:forum");
+        assertEquals(Collections.emptyList(), update(1));
+    }
+
+    @Test
+    public void removedPlayersAreDeleted() {
+        MPPlayer alice = player("alice", "#1#a", "os", "mt:interact");
+        MPPlayer carol = player("carol", "#1#c", "os", "web:forum");
+        server.players.add(alice);
+        server.players.add(carol);
+        server.bypass_players.put("guest", "#1#g");
+        update(3);
+
+        server.players.remove(alice);
+        server.players.remove(carol);
+        server.bypass_players.clear();
+        List<String> commands = update(0);
+        Collections.sort(commands);
+        assertEquals(Arrays.asList("@auth_del alice", "@auth_del guest"), commands);
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void playersLosingAllPrivilegesAreDeleted() {
+        MPPlayer alice = player("alice", "#1#a", "os", "mt:interact");
+        server.players.add(alice);
+        update(1);
+
+        alice.privileges.clear();
+        assertEquals(Collections.singletonList("@auth_del alice"), update(1));
+        assertEquals(Collections.emptyList(), update(0));
+
+        alice.privileges.add("mt:shout");
+        assertEquals(Collections.singletonList("@auth_set alice:#1#a:shout"), update(1));
+    }
+
+    @Test
+    public void bypassTakesPrecedence() {
+        server.players.add(player("alice", "#1#a", "os", "mt:interact"));
+        update(1);
+
+        server.bypass_players.put("alice", "#1#g");
+        assertEquals(Collections.singletonList("@auth_set alice:#1#g"), update(1));
+
+        server.bypass_players.clear();
+        assertEquals(Collections.singletonList("@auth_set alice:#1#a:interact"), update(1));
+    }
+
+    @Test
+    public void commandsKeepModInSyncWithFullRender() {
+        Random random = new Random(1);
+        List<List<String>> privilegeSets = Arrays.asList(
+                Arrays.asList("mt:interact"),
+                Arrays.asList("mt:interact", "mt:shout"),
+                Arrays.asList("mt:all"),
+                Arrays.asList("web:forum"),
+                Collections.<String>emptyList()
+        );
+        Map<String, String> modAuth = new TreeMap<>();
+
+        for (int round = 0; round < 500; round++) {
+            server.players.clear();
+            server.bypass_players.clear();
+            for (int i = 0; i < 40; i++) {
+                if (random.nextInt(4) == 0) {
+                    continue;
+                }
+                String name = "p" + i;
+                if (random.nextInt(10) == 0) {
+                    server.bypass_players.put(name, "#1#g" + random.nextInt(2));
+                } else {
+                    MPPlayer p = player(name, "#1#" + random.nextInt(3), random.nextInt(8) == 0 ? "mc" : "os");
+                    p.privileges.addAll(privilegeSets.get(random.nextInt(privilegeSets.size())));
+                    server.players.add(p);
+                }
+            }
+
+            List<String> commands = new ArrayList<>();
+            tracker.update(server, commands);
+            for (String command : commands) {
+                if (command.startsWith("@auth_set ")) {
+                    String line = command.substring("@auth_set ".length());
+                    modAuth.put(line.substring(0, line.indexOf(':')), line);
+                } else {
+                    modAuth.remove(command.substring("@auth_del ".length()));
+                }
+            }
+
+            Map<String, String> expected = new TreeMap<>();
+            for (String line : renderer.render(server).split("\n")) {
+                if (!line.isEmpty()) {
+                    expected.put(line.substring(0, line.indexOf(':')), line);
+                }
+            }
+            // In the auth files, a bypass entry overrides a player of the same name.
+            for (Map.Entry<String, String> bypass : server.bypass_players.entrySet()) {
+                expected.put(bypass.getKey(), bypass.getKey() + ":" + bypass.getValue());
+            }
+            assertEquals(expected, modAuth);
+        }
+    }
+}
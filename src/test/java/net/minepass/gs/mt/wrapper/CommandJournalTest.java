@@ -0,0 +1,242 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File journalFile;
+    private File ackFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(folder.getRoot(), "command.journal");
+        ackFile = new File(folder.getRoot(), "command.ack");
+    }
+
+    @Test
+    public void appendWritesSequencedRecordsAfterHeader() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        Queue<String> queue = queue("kick alice", "msg bob hello");
+
+        assertEquals(2, journal.append(queue));
+        assertTrue(queue.isEmpty());
+        assertEquals(2, journal.getLastSequence());
+
+        List<String> lines = lines();
+        assertEquals("MPJ " + journal.getGeneration(), lines.get(0));
+        assertTrue(lines.get(1).startsWith(CommandJournal.BATCH_TIME));
+        assertEquals(Arrays.asList("1 kick alice", "2 msg bob hello"), records());
+    }
+
+    @Test
+    public void appendFlattensLineBreaks() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        journal.append(queue("msg bob one\ntwo\rthree"));
+
+        assertEquals(Arrays.asList("1 msg bob one two three"), records());
+    }
+
+    @Test
+    public void appendLimitsBatchSize() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        Queue<String> queue = new ArrayDeque<>();
+        for (int i = 0; i < 1500; i++) {
+            queue.add("cmd " + i);
+        }
+
+        assertEquals(1000, journal.append(queue));
+        assertEquals(500, queue.size());
+        assertEquals(500, journal.append(queue));
+        assertEquals(1500, journal.getLastSequence());
+    }
+
+    @Test
+    public void reopenStartsNewGenerationAndContinuesSequence() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        journal.append(queue("a", "b", "c"));
+        long generation = journal.getGeneration();
+
+        CommandJournal reopened = new CommandJournal(journalFile, ackFile);
+        assertTrue(reopened.getGeneration() > generation);
+        assertEquals(3, reopened.getLastSequence());
+        assertEquals(Arrays.asList("1 a", "2 b", "3 c"), records());
+
+        reopened.append(queue("d"));
+        assertEquals(4, reopened.getLastSequence());
+    }
+
+    @Test
+    public void reopenDropsAcknowledgedRecords() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        journal.append(queue("a", "b", "c"));
+        writeAck("2 150 0");
+
+        CommandJournal reopened = new CommandJournal(journalFile, ackFile);
+        assertEquals(3, reopened.getLastSequence());
+        assertEquals(Arrays.asList("3 c"), records());
+    }
+
+    @Test
+    public void reopenContinuesFromAckWhenJournalIsLost() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        journal.append(queue("a", "b", "c"));
+        writeAck("3");
+        assertTrue(journalFile.delete());
+
+        CommandJournal reopened = new CommandJournal(journalFile, ackFile);
+        reopened.append(queue("d"));
+        assertEquals(Arrays.asList("4 d"), records());
+    }
+
+    @Test
+    public void reopenDropsPartialRecord() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        journal.append(queue("a"));
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write("2 interrupt".getBytes(StandardCharsets.UTF_8));
+        }
+
+        CommandJournal reopened = new CommandJournal(journalFile, ackFile);
+        assertEquals(1, reopened.getLastSequence());
+        assertEquals(Arrays.asList("1 a"), records());
+    }
+
+    @Test
+    public void readAcknowledgement() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        assertEquals(0, journal.readAcknowledgement().sequence);
+
+        writeAck("12 340 5\n");
+        CommandJournal.Acknowledgement ack = journal.readAcknowledgement();
+        assertEquals(12, ack.sequence);
+        assertEquals(340, ack.budgetUsed);
+        assertEquals(5, ack.backlog);
+
+        writeAck("garbage");
+        assertEquals(0, journal.readAcknowledgement().sequence);
+    }
+
+    @Test
+    public void compactWaitsForSizeAndAcknowledgement() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        journal.append(queue("a", "b"));
+        assertFalse(journal.compact(2));
+
+        Queue<String> queue = new ArrayDeque<>();
+        char[] padding = new char[1000];
+        Arrays.fill(padding, 'x');
+        for (int i = 0; i < 100; i++) {
+            queue.add("msg " + new String(padding));
+        }
+        journal.append(queue);
+        assertFalse(journal.compact(0));
+
+        long generation = journal.getGeneration();
+        assertTrue(journal.compact(101));
+        assertTrue(journal.getGeneration() > generation);
+        assertEquals(102, journal.getLastSequence());
+
+        List<String> records = records();
+        assertEquals(1, records.size());
+        assertTrue(records.get(0).startsWith("102 msg "));
+        assertFalse(journal.compact(101));
+    }
+
+    @Test
+    public void isOversize() {
+        assertFalse(CommandJournal.isOversize("msg bob hello"));
+        assertFalse(CommandJournal.isOversize(repeat('x', CommandJournal.MAX_RECORD - 22)));
+        assertTrue(CommandJournal.isOversize(repeat('x', CommandJournal.MAX_RECORD - 21)));
+        // Three bytes per char in UTF-8.
+        assertTrue(CommandJournal.isOversize(repeat('\u20ac', CommandJournal.MAX_RECORD / 3)));
+    }
+
+    @Test
+    public void appendDiscardsOversizeCommands() throws IOException {
+        CommandJournal journal = new CommandJournal(journalFile, ackFile);
+        Queue<String> queue = queue("a", repeat('x', CommandJournal.MAX_RECORD), "b");
+
+        assertEquals(2, journal.append(queue));
+        assertTrue(queue.isEmpty());
+        assertEquals(Arrays.asList("1 a", "2 b"), records());
+
+        assertEquals(0, journal.append(queue(repeat('x', CommandJournal.MAX_RECORD))));
+        assertEquals(2, journal.getLastSequence());
+    }
+
+    private static Queue<String> queue(String... commands) {
+        return new ArrayDeque<>(Arrays.asList(commands));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private void writeAck(String ack) throws IOException {
+        Files.write(ackFile.toPath(), ack.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the journal's command records (without header and batch times)
+     */
+    private List<String> records() throws IOException {
+        List<String> records = new ArrayList<>();
+        for (String line : lines()) {
+            if (!line.startsWith("MPJ ") && !line.startsWith(CommandJournal.BATCH_TIME)) {
+                records.add(line);
+            }
+        }
+        return records;
+    }
+}
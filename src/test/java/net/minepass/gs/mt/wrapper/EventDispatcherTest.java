@@ -0,0 +1,191 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.TestFixtures.RecordingParser;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventDispatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MP_MinetestWrapper wrapper;
+    private EventDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws IOException {
+        wrapper = TestFixtures.createWrapper(folder.getRoot());
+        dispatcher = new EventDispatcher();
+    }
+
+    private RecordingParser register(String regex, String literal) {
+        RecordingParser parser = new RecordingParser(wrapper, regex, literal);
+        dispatcher.register(parser);
+        return parser;
+    }
+
+    private EventParser.Status dispatch(String thread, String message) {
+        return dispatcher.dispatch("ACTION", thread, message);
+    }
+
+    @Test
+    public void parsersAreOnlyTriedOnMessagesContainingTheirLiteral() {
+        RecordingParser joins = register("(\\w+) joins game", " joins game");
+        RecordingParser leaves = register("(\\w+) leaves game", " leaves game");
+
+        assertEquals(EventParser.Status.HANDLED, dispatch("Server", "alice joins game. List of players: alice"));
+        assertEquals(EventParser.Status.IGNORED, dispatch("Server", "Emerge thread idle"));
+        assertEquals(EventParser.Status.HANDLED, dispatch("Server", "bob leaves game. List of players: alice"));
+
+        assertEquals(Collections.singletonList("alice joins game. List of players: alice"), joins.tried);
+        assertEquals(Collections.singletonList("bob leaves game. List of players: alice"), leaves.tried);
+    }
+
+    @Test
+    public void parsersWithoutLiteralAreAlwaysTried() {
+        RecordingParser any = register("^x", null);
+        RecordingParser empty = register("^y", "");
+
+        dispatch("Server", "a");
+        dispatch("Server", "b");
+        assertEquals(Arrays.asList("a", "b"), any.tried);
+        assertEquals(Arrays.asList("a", "b"), empty.tried);
+    }
+
+    @Test
+    public void literalsMayShareParsersAndFirstCharacters() {
+        RecordingParser a = register("abc", "abc");
+        a.onMatch = EventParser.Status.IGNORED;
+        RecordingParser b = register("abc\\d", "abc");
+        RecordingParser c = register("abd", "abd");
+        // Same bucket as 'a', as buckets are by character code modulo 128.
+        RecordingParser d = register("\u00e1x", "\u00e1x");
+
+        dispatch("Server", "zz abc");
+        dispatch("Server", "ab abd");
+        dispatch("Server", "\u00e1x");
+        assertEquals(Collections.singletonList("zz abc"), a.tried);
+        assertEquals(Collections.singletonList("zz abc"), b.tried);
+        assertEquals(Collections.singletonList("ab abd"), c.tried);
+        assertEquals(Collections.singletonList("\u00e1x"), d.tried);
+    }
+
+    @Test
+    public void candidatesAreTriedInRegistrationOrder() {
+        RecordingParser ignoring = register("nomatch", "game");
+        RecordingParser first = register("game", "game");
+        RecordingParser second = register("game", null);
+
+        dispatch("Server", "game");
+        assertEquals(1, ignoring.tried.size());
+        assertEquals(1, first.handled.size());
+        assertEquals(0, second.tried.size());
+    }
+
+    @Test
+    public void disabledAndFilteredParsersAreSkipped() {
+        RecordingParser disabled = register("x", "x");
+        disabled.enabled = false;
+        RecordingParser errorsOnly = new RecordingParser(wrapper, "x", "x") {
+            @Override
+            public boolean filterLevel(CharSequence levelName) {
+                return levelName.toString().equals("ERROR");
+            }
+        };
+        dispatcher.register(errorsOnly);
+
+        assertEquals(EventParser.Status.IGNORED, dispatch("Server", "x"));
+        assertEquals(EventParser.Status.HANDLED, dispatcher.dispatch("ERROR", "Server", "x"));
+        assertEquals(0, disabled.tried.size());
+        assertEquals(1, errorsOnly.handled.size());
+    }
+
+    @Test
+    public void heldParserReceivesFollowingMessagesFromItsThread() {
+        RecordingParser holding = register("begin", "begin");
+        holding.onMatch = EventParser.Status.HOLD;
+        holding.holdLines = 2;
+        RecordingParser other = register("begin|more.*", null);
+
+        assertEquals(EventParser.Status.HOLD, dispatch("Server", "begin"));
+        assertEquals(EventParser.Status.HANDLED, dispatch("Emerge", "more"));
+        assertEquals(EventParser.Status.HOLD, dispatch("Server", "more 1"));
+        assertEquals(EventParser.Status.HANDLED, dispatch("Server", "more 2"));
+        assertEquals(EventParser.Status.HANDLED, dispatch("Server", "more 3"));
+
+        assertEquals(Arrays.asList("more 1", "more 2"), holding.continued);
+        assertEquals(Arrays.asList("more", "more 3"), other.handled);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registrationIsLimited() {
+        for (int i = 0; i <= Long.SIZE; i++) {
+            register("x", "x" + i);
+        }
+    }
+
+    @Test
+    public void prefilterDoesNotChangeWhatIsHandled() {
+        String[] literals = {"joins", "leaves", "join", "MP|", "Mod", "ea", "s g"};
+        EventDispatcher unfiltered = new EventDispatcher();
+        RecordingParser[] filteredParsers = new RecordingParser[literals.length];
+        RecordingParser[] unfilteredParsers = new RecordingParser[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            filteredParsers[i] = register("\\w*" + Pattern.quote(literals[i]) + "\\w*", literals[i]);
+            unfilteredParsers[i] = new RecordingParser(wrapper, filteredParsers[i].pattern.pattern(), null);
+            unfiltered.register(unfilteredParsers[i]);
+        }
+
+        String alphabet = "joinsleavgMP|d xa";
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 20000; n++) {
+            sb.setLength(0);
+            int length = random.nextInt(16);
+            for (int i = 0; i < length; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String message = sb.toString();
+            assertEquals(message,
+                    unfiltered.dispatch("ACTION", "Server", message),
+                    dispatcher.dispatch("ACTION", "Server", message));
+        }
+        for (int i = 0; i < literals.length; i++) {
+            assertEquals(unfilteredParsers[i].handled, filteredParsers[i].handled);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogLineReaderTest {
+
+    /**
+     * The log format as matched before the tokenizer replaced it.
+     */
+    private static final Pattern legacyLogPattern = Pattern.compile(
+            "^(?<ts>[0-9: -]+): (?<output>(?<level>[A-Z]+)(\\[(?<thread>[a-zA-Z]+)\\]): (?<msg>.*))$"
+    );
+
+    private static List<String> readAll(Reader reader) throws IOException {
+        LogLineReader lineReader = new LogLineReader(reader);
+        LogLine line = new LogLine();
+        List<String> lines = new ArrayList<>();
+        while (lineReader.readLine(line)) {
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Assert the tokenizer splits a line exactly as the legacy pattern did.
+     */
+    private static void assertMatchesLegacy(String s) {
+        LogLine line = new LogLine();
+        line.set(s.toCharArray(), 0, s.length());
+        Matcher m = legacyLogPattern.matcher(s);
+
+        assertEquals(s, m.find(), line.isFormatted());
+        if (line.isFormatted()) {
+            assertEquals(s, m.group("ts"), line.getTimestamp().toString());
+            assertEquals(s, m.group("output"), line.getOutput().toString());
+            assertEquals(s, m.group("level"), line.getLevel().toString());
+            assertEquals(s, m.group("thread"), line.getThread().toString());
+            assertEquals(s, m.group("msg"), line.getMessage().toString());
+        } else {
+            assertEquals(0, line.getMessage().length());
+            assertEquals(0, line.getThread().length());
+        }
+    }
+
+    @Test
+    public void splitsLines() throws IOException {
+        assertEquals(Arrays.asList("a", "", "b", "c"), readAll(new StringReader("a\n\nb\r\nc\n")));
+    }
+
+    @Test
+    public void returnsFinalLineWithoutTerminator() throws IOException {
+        assertEquals(Arrays.asList("a", "b"), readAll(new StringReader("a\nb")));
+        assertEquals(Arrays.asList(), readAll(new StringReader("")));
+    }
+
+    @Test
+    public void keepsLoneCarriageReturn() throws IOException {
+        assertEquals(Arrays.asList("a\rb", "\r"), readAll(new StringReader("a\rb\n\r\r\n")));
+    }
+
+    @Test
+    public void readsLinesLongerThanBuffer() throws IOException {
+        char[] longLine = new char[50000];
+        Arrays.fill(longLine, 'x');
+        String s = new String(longLine);
+        assertEquals(Arrays.asList("a", s, "b"), readAll(new StringReader("a\n" + s + "\nb\n")));
+    }
+
+    @Test
+    public void readsLinesSplitAcrossReads() throws IOException {
+        String text = "2016-05-01 10:00:00: ACTION[Server]: alice joins game.\r\nshort\n\nlast";
+        Reader trickle = new Reader() {
+            private int position = 0;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                if (position == text.length()) {
+                    return -1;
+                }
+                cbuf[off] = text.charAt(position++);
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals(Arrays.asList(
+                "2016-05-01 10:00:00: ACTION[Server]: alice joins game.", "short", "", "last"
+        ), readAll(trickle));
+    }
+
+    @Test
+    public void tokenizesFields() {
+        String s = "2016-05-01 10:00:00: ACTION[Server]: alice joins game.";
+        LogLine line = new LogLine();
+        line.set(s.toCharArray(), 0, s.length());
+
+        assertTrue(line.isFormatted());
+        assertTrue(line.getTimestamp().contentEquals("2016-05-01 10:00:00"));
+        assertTrue(line.getLevel().contentEquals("ACTION"));
+        assertTrue(line.getThread().contentEquals("Server"));
+        assertTrue(line.getMessage().contentEquals("alice joins game."));
+        assertTrue(line.getOutput().contentEquals("ACTION[Server]: alice joins game."));
+        assertFalse(line.getLevel().contentEquals("ACTIO"));
+    }
+
+    @Test
+    public void copyKeepsFields() {
+        String s = "2016-05-01 10:00:00: ERROR[Main]: boom";
+        LogLine line = new LogLine();
+        line.set(s.toCharArray(), 0, s.length());
+        LogLine copy = new LogLine();
+        copy.copyFrom(line);
+
+        String other = "unformatted";
+        line.set(other.toCharArray(), 0, other.length());
+        assertTrue(copy.isFormatted());
+        assertEquals(s, copy.toString());
+        assertEquals("boom", copy.getMessage().toString());
+        assertFalse(line.isFormatted());
+    }
+
+    @Test
+    public void agreesWithLegacyPattern() {
+        String[] lines = {
+                "2016-05-01 10:00:00: ACTION[Server]: alice joins game.",
+                "2016-05-01 10:00:00: ERROR[Main]: ",
+                "2016-05-01 10:00:00: ERROR[Main]:",
+                "2016-05-01 10:00:00: ERROR[Main]: a: b [c]: d",
+                "10: 20: INFO[Emerge]: x",
+                "10: : INFO[Emerge]: x",
+                "10:  INFO[Emerge]: x",
+                ": INFO[Main]: x",
+                "1: INFO[Main]: x",
+                "1:INFO[Main]: x",
+                "2016: info[Main]: x",
+                "2016: INFO[]: x",
+                "2016: INFO[Ma1n]: x",
+                "2016: INFO[Main] x",
+                "2016: INFO Main: x",
+                "2016: INFO[Main",
+                "2016: INFO",
+                "2016: ",
+                "",
+                "  Separator  ",
+                "ERROR[Main]: no timestamp",
+        };
+        for (String s : lines) {
+            assertMatchesLegacy(s);
+        }
+    }
+
+    @Test
+    public void agreesWithLegacyPatternOnRandomLines() {
+        // The legacy '.' does not match line separators, which the reader has already split on.
+        String alphabet = "0123456789: -[]AZMainERROR aez\t.";
+        String[] pieces = {"2016-05-01 10:00:00", ": ", "ACTION", "[", "Server", "]", "ERROR[Main]: "};
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 200000; i++) {
+            sb.setLength(0);
+            int n = random.nextInt(12);
+            for (int j = 0; j < n; j++) {
+                if (random.nextBoolean()) {
+                    sb.append(pieces[random.nextInt(pieces.length)]);
+                } else {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertMatchesLegacy(sb.toString());
+        }
+    }
+
+    @Test
+    public void agreesWithLegacyPatternOnBenchmarkCorpus() throws IOException {
+        File corpus = new File("src/jmh/resources/minetest-debug.txt");
+        Assume.assumeTrue(corpus.isFile());
+
+        LogLineReader reader = new LogLineReader(Files.newBufferedReader(corpus.toPath(), StandardCharsets.UTF_8));
+        LogLine line = new LogLine();
+        int count = 0;
+        while (reader.readLine(line)) {
+            assertMatchesLegacy(line.toString());
+            count++;
+        }
+        reader.close();
+        assertTrue(count > 0);
+    }
+}
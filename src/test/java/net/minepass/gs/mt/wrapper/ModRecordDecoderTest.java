@@ -0,0 +1,188 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.events.ModListed;
+import net.minepass.gs.mt.wrapper.events.PlayerJoined;
+import net.minepass.gs.mt.wrapper.events.PlayerLeft;
+import net.minepass.gs.mt.wrapper.events.ServerEvent;
+import net.minepass.gs.mt.wrapper.events.ServerStarted;
+import net.minepass.gs.mt.wrapper.events.ServerVersionDetected;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModRecordDecoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MP_MinetestWrapper wrapper;
+    private List<ServerEvent> events;
+    private ModRecordDecoder decoder;
+
+    @Before
+    public void setUp() throws IOException {
+        wrapper = TestFixtures.createWrapper(folder.getRoot());
+        events = TestFixtures.recordEvents(wrapper);
+        decoder = new ModRecordDecoder(wrapper);
+    }
+
+    private List<ServerEvent> decode(String... records) throws InterruptedException {
+        for (String record : records) {
+            assertTrue(record, ModRecordDecoder.isRecord(record));
+            decoder.decode(record);
+        }
+        assertTrue(wrapper.getEventBus().awaitIdle(5, TimeUnit.SECONDS));
+        List<ServerEvent> published = new ArrayList<>(events);
+        events.clear();
+        return published;
+    }
+
+    private long counter(String name) {
+        return wrapper.getMetrics().counter(name, "").get();
+    }
+
+    @Test
+    public void isRecord() {
+        assertTrue(ModRecordDecoder.isRecord("MP|loaded"));
+        assertTrue(ModRecordDecoder.isRecord("MP|"));
+        assertFalse(ModRecordDecoder.isRecord("MP"));
+        assertFalse(ModRecordDecoder.isRecord("mp|loaded"));
+        assertFalse(ModRecordDecoder.isRecord(" MP|loaded"));
+        assertFalse(ModRecordDecoder.isRecord("alice joins game."));
+    }
+
+    @Test
+    public void join() throws InterruptedException {
+        List<ServerEvent> published = decode("MP|join|alice|10.0.0.1", "MP|join|bob", "MP|join");
+        assertEquals(2, published.size());
+
+        PlayerJoined alice = (PlayerJoined) published.get(0);
+        assertEquals("alice", alice.name);
+        assertEquals("10.0.0.1", alice.ip);
+        PlayerJoined bob = (PlayerJoined) published.get(1);
+        assertEquals("bob", bob.name);
+        assertNull(bob.ip);
+    }
+
+    @Test
+    public void leave() throws InterruptedException {
+        List<ServerEvent> published = decode("MP|leave|alice|1", "MP|leave");
+        assertEquals(1, published.size());
+        assertEquals("alice", ((PlayerLeft) published.get(0)).name);
+    }
+
+    @Test
+    public void step() throws InterruptedException {
+        decode("MP|step|1250|48000|200");
+        assertEquals(1250, wrapper.getState().modStepAverage);
+        assertEquals(48000, wrapper.getState().modStepMax);
+
+        decode("MP|step|75us|x");
+        assertEquals(75, wrapper.getState().modStepAverage);
+        assertEquals(0, wrapper.getState().modStepMax);
+    }
+
+    @Test
+    public void hello() throws InterruptedException {
+        assertFalse(wrapper.getState().modRecords);
+        decode("MP|hello|" + wrapper.getWrapperVersion() + "|records,auth");
+        assertTrue(wrapper.getState().modRecords);
+        assertTrue(wrapper.getState().modAuthChanges);
+
+        decode("MP|hello|" + wrapper.getWrapperVersion() + "|records,authx");
+        assertFalse(wrapper.getState().modAuthChanges);
+    }
+
+    @Test
+    public void startupRecords() throws InterruptedException {
+        List<ServerEvent> published = decode(
+                "MP|status|0.4.13|# Server: version=0.4.13",
+                "MP|mods|default,,mesecons,minepass,",
+                "MP|loaded"
+        );
+
+        assertEquals(5, published.size());
+        assertEquals("0.4.13", ((ServerVersionDetected) published.get(0)).version);
+        List<String> mods = new ArrayList<>();
+        for (ServerEvent event : published.subList(1, 4)) {
+            mods.add(((ModListed) event).name);
+        }
+        assertEquals(Arrays.asList("default", "mesecons", "minepass"), mods);
+        assertTrue(published.get(4) instanceof ServerStarted);
+    }
+
+    @Test
+    public void startupRecordsAreIgnoredOnceStarted() throws InterruptedException {
+        wrapper.getState().minepassStarted = true;
+        List<ServerEvent> published = decode("MP|status|0.4.13|ok", "MP|mods|default", "MP|loaded");
+
+        assertEquals(0, published.size());
+        assertEquals(0, counter("minepass_mod_records_unknown_total"));
+        assertEquals(3, counter("minepass_mod_records_total"));
+    }
+
+    @Test
+    public void unknownRecordsAreCounted() throws InterruptedException {
+        List<ServerEvent> published = decode("MP|future|1|2", "MP|", "MP|joined|alice");
+        assertEquals(0, published.size());
+        assertEquals(3, counter("minepass_mod_records_unknown_total"));
+    }
+
+    @Test
+    public void extraFieldsAreIgnored() throws InterruptedException {
+        // Extra fields are ignored, and do not carry over to the next record.
+        List<ServerEvent> published = decode("MP|join|a|1|2|3|4|5|6|7", "MP|join|bob|10.0.0.2");
+        assertEquals(2, published.size());
+        assertEquals("1", ((PlayerJoined) published.get(0)).ip);
+        assertEquals("bob", ((PlayerJoined) published.get(1)).name);
+        assertEquals("10.0.0.2", ((PlayerJoined) published.get(1)).ip);
+    }
+
+    @Test
+    public void decodesCharSequenceViews() throws InterruptedException {
+        String s = "2016-05-01 10:00:00: ACTION[Server]: MP|join|alice|10.0.0.1";
+        LogLine line = new LogLine();
+        line.set(s.toCharArray(), 0, s.length());
+
+        assertTrue(ModRecordDecoder.isRecord(line.getMessage()));
+        decoder.decode(line.getMessage());
+        assertTrue(wrapper.getEventBus().awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals("alice", ((PlayerJoined) events.get(0)).name);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.TestFixtures.RecordingParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParserPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MP_MinetestWrapper wrapper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        wrapper = TestFixtures.createWrapper(folder.getRoot());
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Records the sequence numbers of "[thread] [seq]" messages, per thread.
+     */
+    private static class SequenceParser extends EventParser {
+
+        final Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+        SequenceParser(MP_MinetestWrapper wrapper) {
+            super(wrapper);
+        }
+
+        @Override
+        protected String getPatternString(String version) {
+            return "^(\\w+) (\\d+)$";
+        }
+
+        @Override
+        protected Status run(Matcher m) {
+            // Only ever called for a given thread by one worker at a time.
+            seen.computeIfAbsent(m.group(1), k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt(m.group(2)));
+            return Status.HANDLED;
+        }
+
+        @Override
+        protected boolean isEnabled() {
+            return true;
+        }
+    }
+
+    private static void submit(ParserPipeline pipeline, LogLine line, String thread, String message) {
+        String s = "2016-05-01 10:00:00: ACTION[" + thread + "]: " + message;
+        line.set(s.toCharArray(), 0, s.length());
+        pipeline.submit(line);
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    @Test
+    public void linesFromEachThreadAreParsedInOrder() {
+        SequenceParser parser = new SequenceParser(wrapper);
+        ParserPipeline pipeline = new ParserPipeline(
+                Collections.singletonList(parser), 4, 16, executor, wrapper.getMetrics());
+        pipeline.start();
+
+        String[] threads = {"Server", "Emerge", "ServerThread", "Main", "Connection", "Async"};
+        LogLine line = new LogLine();
+        for (int i = 0; i < 20000; i++) {
+            for (String thread : threads) {
+                submit(pipeline, line, thread, thread + " " + i);
+            }
+        }
+        pipeline.awaitIdle();
+
+        for (String thread : threads) {
+            assertEquals(thread, range(20000), parser.seen.get(thread));
+        }
+    }
+
+    @Test
+    public void heldParserReceivesContinuedLinesOfItsThread() {
+        RecordingParser holding = new RecordingParser(wrapper, "^begin$", "begin");
+        holding.onMatch = EventParser.Status.HOLD;
+        holding.holdLines = 3;
+        SequenceParser other = new SequenceParser(wrapper);
+        ParserPipeline pipeline = new ParserPipeline(
+                Arrays.asList(holding, other), 4, 16, executor, wrapper.getMetrics());
+        pipeline.start();
+
+        LogLine line = new LogLine();
+        submit(pipeline, line, "Server", "begin");
+        for (int i = 0; i < 5; i++) {
+            submit(pipeline, line, "Emerge", "Emerge " + i);
+            submit(pipeline, line, "Server", "Server " + i);
+        }
+        pipeline.awaitIdle();
+
+        assertEquals(Arrays.asList("Server 0", "Server 1", "Server 2"), holding.continued);
+        assertEquals(range(5), other.seen.get("Emerge"));
+        assertEquals(Arrays.asList(3, 4), other.seen.get("Server"));
+    }
+
+    @Test
+    public void zeroWorkersParseOnSubmittingThread() {
+        Executor failing = r -> {
+            throw new AssertionError("No executor expected.");
+        };
+        SequenceParser parser = new SequenceParser(wrapper);
+        ParserPipeline pipeline = new ParserPipeline(
+                Collections.singletonList(parser), 0, 16, failing, wrapper.getMetrics());
+        pipeline.start();
+
+        LogLine line = new LogLine();
+        submit(pipeline, line, "Server", "Server 0");
+        assertEquals(Collections.singletonList(0), parser.seen.get("Server"));
+        assertEquals(0, pipeline.getDepth());
+    }
+
+    @Test
+    public void fullQueueHoldsBackReader() {
+        SequenceParser parser = new SequenceParser(wrapper) {
+            @Override
+            protected Status run(Matcher m) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.run(m);
+            }
+        };
+        ParserPipeline pipeline = new ParserPipeline(
+                Collections.singletonList(parser), 1, 2, executor, wrapper.getMetrics());
+        pipeline.start();
+
+        LogLine line = new LogLine();
+        for (int i = 0; i < 50; i++) {
+            submit(pipeline, line, "Server", "Server " + i);
+            assertTrue(pipeline.getDepth() <= 2);
+        }
+        pipeline.close();
+
+        assertEquals(range(50), parser.seen.get("Server"));
+        assertTrue(wrapper.getMetrics().counter("minepass_parser_backpressure_total", "").get() > 0);
+    }
+
+    @Test
+    public void rejectedWorkIsParsedOnSubmittingThread() {
+        Executor rejecting = r -> {
+            throw new RejectedExecutionException();
+        };
+        SequenceParser parser = new SequenceParser(wrapper);
+        ParserPipeline pipeline = new ParserPipeline(
+                Collections.singletonList(parser), 2, 16, rejecting, wrapper.getMetrics());
+        pipeline.start();
+
+        LogLine line = new LogLine();
+        for (int i = 0; i < 10; i++) {
+            submit(pipeline, line, "Server", "Server " + i);
+        }
+        assertEquals(0, pipeline.getDepth());
+        assertEquals(range(10), parser.seen.get("Server"));
+    }
+}
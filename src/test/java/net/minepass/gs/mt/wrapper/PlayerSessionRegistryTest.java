@@ -0,0 +1,209 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.metrics.Metrics;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PlayerSessionRegistryTest {
+
+    private final Metrics metrics = new Metrics();
+
+    private PlayerSessionRegistry registry(int cacheSize, long idleSeconds) {
+        Properties config = new Properties();
+        config.setProperty("session_cache_size", String.valueOf(cacheSize));
+        config.setProperty("session_idle_s", String.valueOf(idleSeconds));
+        return new PlayerSessionRegistry(config, metrics);
+    }
+
+    private long evictions(String reason) {
+        return metrics.counter("minepass_player_session_evictions_total", "", "reason", reason).get();
+    }
+
+    @Test
+    public void joinMapsBothDirections() {
+        PlayerSessionRegistry registry = registry(10, 3600);
+        UUID id = UUID.randomUUID();
+
+        assertEquals(id, registry.join("alice", id));
+        assertEquals(id, registry.getId("alice"));
+        assertEquals("alice", registry.getName(id));
+        assertNull(registry.getId("bob"));
+        assertNull(registry.getName(UUID.randomUUID()));
+    }
+
+    @Test
+    public void unknownPlayerKeepsGeneratedId() {
+        PlayerSessionRegistry registry = registry(10, 3600);
+        UUID id = registry.join("guest", null);
+        assertNotNull(id);
+
+        registry.leave("guest");
+        assertEquals(id, registry.join("guest", null));
+    }
+
+    @Test
+    public void newIdReplacesOldMapping() {
+        PlayerSessionRegistry registry = registry(10, 3600);
+        UUID first = registry.join("alice", null);
+        UUID second = UUID.randomUUID();
+
+        assertEquals(second, registry.join("alice", second));
+        assertNull(registry.getName(first));
+        assertEquals("alice", registry.getName(second));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void idMovedToAnotherNameDropsOldName() {
+        PlayerSessionRegistry registry = registry(10, 3600);
+        UUID id = UUID.randomUUID();
+        registry.join("alice", id);
+        registry.leave("alice");
+
+        registry.join("alice2", id);
+        assertNull(registry.getId("alice"));
+        assertEquals(id, registry.getId("alice2"));
+        assertEquals("alice2", registry.getName(id));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void onlinePlayersAreNeverEvicted() {
+        PlayerSessionRegistry registry = registry(0, 0);
+        for (int i = 0; i < 100; i++) {
+            registry.join("p" + i, null);
+        }
+        assertEquals(100, registry.size());
+        assertEquals(0, evictions("size"));
+    }
+
+    @Test
+    public void oldestOfflinePlayersAreEvictedPastCacheSize() {
+        PlayerSessionRegistry registry = registry(2, 3600);
+        for (int i = 0; i < 4; i++) {
+            registry.join("p" + i, null);
+        }
+        registry.leave("p2");
+        registry.leave("p0");
+        registry.leave("p1");
+
+        assertNull(registry.getId("p2"));
+        assertNotNull(registry.getId("p0"));
+        assertNotNull(registry.getId("p1"));
+        assertNotNull(registry.getId("p3"));
+        assertEquals(3, registry.size());
+        assertEquals(1, evictions("size"));
+    }
+
+    @Test
+    public void rejoiningRemovesFromEvictionOrder() {
+        PlayerSessionRegistry registry = registry(1, 3600);
+        registry.join("p0", null);
+        registry.join("p1", null);
+        registry.leave("p0");
+        registry.join("p0", null);
+        registry.leave("p1");
+
+        assertNotNull(registry.getId("p0"));
+        assertNotNull(registry.getId("p1"));
+    }
+
+    @Test
+    public void idlePlayersAreEvicted() throws InterruptedException {
+        PlayerSessionRegistry registry = registry(10, 0);
+        registry.join("p0", null);
+        registry.leave("p0");
+        Thread.sleep(5);
+        registry.join("p1", null);
+
+        assertNull(registry.getId("p0"));
+        assertEquals(1, registry.size());
+        assertEquals(1, evictions("idle"));
+    }
+
+    @Test
+    public void leaveAll() {
+        PlayerSessionRegistry registry = registry(1, 3600);
+        registry.join("p0", null);
+        registry.join("p1", null);
+        registry.join("p2", null);
+        registry.leaveAll();
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void namesAndIdsAlwaysReferToEachOther() {
+        PlayerSessionRegistry registry = registry(5, 3600);
+        Random random = new Random(1);
+        UUID[] ids = new UUID[15];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID();
+        }
+        Map<String, UUID> seen = new HashMap<>();
+
+        for (int step = 0; step < 20000; step++) {
+            String name = "p" + random.nextInt(60);
+            switch (random.nextInt(3)) {
+                case 0:
+                    seen.put(name, registry.join(name, ids[random.nextInt(ids.length)]));
+                    break;
+                case 1:
+                    seen.put(name, registry.join(name, null));
+                    break;
+                default:
+                    registry.leave(name);
+            }
+
+            int mapped = 0;
+            for (String n : seen.keySet()) {
+                UUID id = registry.getId(n);
+                if (id != null) {
+                    assertEquals(n, registry.getName(id));
+                    mapped++;
+                }
+            }
+            for (UUID id : ids) {
+                String n = registry.getName(id);
+                if (n != null) {
+                    assertEquals(id, registry.getId(n));
+                }
+            }
+            assertEquals(mapped, registry.size());
+        }
+        assertNotEquals(0, evictions("size"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class RestartPolicyTest {
+
+    private static RestartPolicy policy(long backoff, long maxBackoff, int crashLimit, long windowSeconds) {
+        Properties config = new Properties();
+        config.setProperty("restart_backoff_ms", String.valueOf(backoff));
+        config.setProperty("restart_backoff_max_ms", String.valueOf(maxBackoff));
+        config.setProperty("restart_crash_limit", String.valueOf(crashLimit));
+        config.setProperty("restart_crash_window_s", String.valueOf(windowSeconds));
+        return new RestartPolicy(config);
+    }
+
+    @Test
+    public void defaults() {
+        RestartPolicy policy = new RestartPolicy(new Properties());
+        assertEquals(1000, policy.onCrash(0));
+        assertEquals(2000, policy.onCrash(0));
+    }
+
+    @Test
+    public void backoffDoublesUpToMaximum() {
+        RestartPolicy policy = policy(100, 1000, 100, 300);
+        assertEquals(100, policy.onCrash(0));
+        assertEquals(200, policy.onCrash(0));
+        assertEquals(400, policy.onCrash(0));
+        assertEquals(800, policy.onCrash(0));
+        assertEquals(1000, policy.onCrash(0));
+        assertEquals(1000, policy.onCrash(0));
+    }
+
+    @Test
+    public void backoffDoesNotOverflow() {
+        RestartPolicy policy = policy(1000, Long.MAX_VALUE, 100, 300);
+        long delay = 0;
+        for (int i = 0; i < 80; i++) {
+            delay = policy.onCrash(0);
+        }
+        assertEquals(1000L << 20, delay);
+    }
+
+    @Test
+    public void backoffStartsOverAfterFullWindow() {
+        RestartPolicy policy = policy(100, 10000, 100, 300);
+        policy.onCrash(0);
+        policy.onCrash(1000);
+        assertEquals(400, policy.onCrash(1000));
+        assertEquals(100, policy.onCrash(300 * 1000));
+        assertEquals(200, policy.onCrash(1000));
+    }
+
+    @Test
+    public void crashLoopStopsRestarts() {
+        RestartPolicy policy = policy(100, 10000, 3, 300);
+        assertEquals(100, policy.onCrash(0));
+        assertEquals(200, policy.onCrash(0));
+        assertEquals(400, policy.onCrash(0));
+        assertEquals(3, policy.getRecentCrashes());
+        assertEquals(-1, policy.onCrash(0));
+        assertEquals(4, policy.getRecentCrashes());
+    }
+
+    @Test
+    public void crashesOutsideWindowAreForgotten() throws InterruptedException {
+        RestartPolicy policy = policy(100, 10000, 1, 0);
+        policy.onCrash(0);
+        Thread.sleep(5);
+        assertEquals(100, policy.onCrash(0));
+        assertEquals(1, policy.getRecentCrashes());
+    }
+}
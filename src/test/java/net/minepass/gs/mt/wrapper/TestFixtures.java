@@ -0,0 +1,130 @@
+/*
+ *  This file is part of MinePass, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) MinePass.net <http://www.minepass.net>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package net.minepass.gs.mt.wrapper;
+
+import net.minepass.gs.mt.wrapper.events.EventBus;
+import net.minepass.gs.mt.wrapper.events.ServerEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared fixtures for the wrapper tests.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Create a wrapper for a throwaway world, which is enough to construct event parsers.
+     */
+    static MP_MinetestWrapper createWrapper(File worldDir) throws IOException {
+        File binary = new File(worldDir, "minetest");
+        Files.write(binary.toPath(), "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        if (!binary.setExecutable(true)) {
+            throw new IOException("Could not create stand-in server binary.");
+        }
+        return new MP_MinetestWrapper(binary.getPath(), worldDir.getPath(), true);
+    }
+
+    /**
+     * Give the wrapper an event bus that only records what is published,
+     * in place of the subscribers that would act on the events.
+     *
+     * @return the published events, in order
+     */
+    static List<ServerEvent> recordEvents(MP_MinetestWrapper wrapper) {
+        List<ServerEvent> events = Collections.synchronizedList(new ArrayList<>());
+        EventBus eventBus = new EventBus(wrapper.getMetrics());
+        eventBus.subscribe("test", events::addAll, ServerEvent.class);
+        try {
+            Field field = MP_MinetestWrapper.class.getDeclaredField("eventBus");
+            field.setAccessible(true);
+            field.set(wrapper, eventBus);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to replace the event bus.", e);
+        }
+        return events;
+    }
+
+    /**
+     * An event parser with a fixed pattern and literal, which records what it is given.
+     */
+    static class RecordingParser extends EventParser {
+
+        final List<String> tried = new ArrayList<>();
+        final List<String> handled = new ArrayList<>();
+        final List<String> continued = new ArrayList<>();
+        boolean enabled = true;
+        Status onMatch = Status.HANDLED;
+        int holdLines = 0;
+
+        RecordingParser(MP_MinetestWrapper wrapper, String regex, String literal) {
+            super(wrapper);
+            // Set here, as the super constructor runs before this class's fields are assigned.
+            this.pattern = Pattern.compile(regex);
+            this.literal = literal;
+        }
+
+        @Override
+        public Status acceptLogMessage(CharSequence logMessage, boolean continued) {
+            if (!continued) {
+                tried.add(logMessage.toString());
+            }
+            return super.acceptLogMessage(logMessage, continued);
+        }
+
+        @Override
+        protected String getPatternString(String version) {
+            return "$^";
+        }
+
+        @Override
+        protected Status run(Matcher m) {
+            handled.add(m.group());
+            return onMatch;
+        }
+
+        @Override
+        protected boolean continuedInput(CharSequence logInput) {
+            continued.add(logInput.toString());
+            return continued.size() < holdLines;
+        }
+
+        @Override
+        protected boolean isEnabled() {
+            return enabled;
+        }
+    }
+}